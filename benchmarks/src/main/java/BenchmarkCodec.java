@@ -0,0 +1,63 @@
+import datenbank.benchmark.CodecWorkload;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+// in the unnamed package so it can reach the engine; see CodecWorkload
+public class BenchmarkCodec implements CodecWorkload {
+    private Type type;
+    private Page page;
+    private Record record;
+    private ByteBuffer pageBuffer;
+    private ByteBuffer recordBuffer;
+
+    @Override
+    public void setUp(int fieldCount) throws Exception {
+        ArrayList<String> fields = new ArrayList<>();
+        for (int i = 0; i < fieldCount; i++) {
+            fields.add("field" + i);
+        }
+        type = new Type("bench", fields, fields.get(0));
+
+        page = new Page(1);
+        for (int slot = 0; slot < Page.getCapacity(); slot++) {
+            String[] values = new String[fieldCount];
+            values[0] = String.valueOf(slot);
+            for (int i = 1; i < fieldCount; i++) {
+                values[i] = "value" + i;
+            }
+            record = new Record(type, values);
+            page.addRecord(record);
+        }
+        pageBuffer = ByteBuffer.allocate(Page.getEncodedLength(type));
+        recordBuffer = ByteBuffer.allocate(Record.getEncodedLength(type));
+        encodePage();
+        encodeRecord();
+    }
+
+    @Override
+    public Object encodePage() {
+        pageBuffer.clear();
+        page.writeTo(type, pageBuffer);
+        return pageBuffer;
+    }
+
+    @Override
+    public Object decodePage() throws Exception {
+        pageBuffer.rewind();
+        return Page.createFromBuffer(type, pageBuffer);
+    }
+
+    @Override
+    public Object encodeRecord() {
+        recordBuffer.clear();
+        record.writeTo(recordBuffer);
+        return recordBuffer;
+    }
+
+    @Override
+    public Object decodeRecord() {
+        recordBuffer.rewind();
+        return Record.createFromBuffer(type, recordBuffer);
+    }
+}
@@ -0,0 +1,94 @@
+import datenbank.benchmark.DatabaseWorkload;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+// in the unnamed package so it can reach the engine; see DatabaseWorkload
+public class BenchmarkDatabase implements DatabaseWorkload {
+    private static final String TYPE_NAME = "bench";
+    private String databaseName;
+    private int fieldCount;
+    private Database db;
+
+    @Override
+    public void setUp(String databaseName, int tableSize, int fieldCount) throws Exception {
+        Logger.setLevel(Logger.Level.OFF);
+        this.databaseName = databaseName;
+        this.fieldCount = fieldCount;
+        deleteDatabaseFiles();
+        db = new Database(databaseName);
+        ArrayList<String> fields = new ArrayList<>();
+        for (int i = 0; i < fieldCount; i++) {
+            fields.add("field" + i);
+        }
+        db.createType(TYPE_NAME, fields, fields.get(0));
+
+        ArrayList<HashMap<String, String>> rows = new ArrayList<>();
+        for (int i = 0; i < tableSize; i++) {
+            rows.add(createValues(String.valueOf(i)));
+        }
+        db.createRecords(TYPE_NAME, rows);
+        db.checkpoint();
+    }
+
+    private HashMap<String, String> createValues(String key) {
+        HashMap<String, String> values = new HashMap<>();
+        values.put("field0", key);
+        for (int i = 1; i < fieldCount; i++) {
+            values.put("field" + i, "value" + i);
+        }
+        return values;
+    }
+
+    @Override
+    public void createRecord(String key) throws Exception {
+        db.createRecord(TYPE_NAME, createValues(key));
+    }
+
+    @Override
+    public void deleteRecord(String key) throws Exception {
+        db.deleteRecord(TYPE_NAME, key);
+    }
+
+    @Override
+    public void deleteRecords(List<String> keys) throws Exception {
+        db.deleteRecords(TYPE_NAME, keys);
+    }
+
+    @Override
+    public Object getRecord(String key) throws Exception {
+        return db.getRecord(TYPE_NAME, key);
+    }
+
+    @Override
+    public int getRecordsByType() throws Exception {
+        return db.getRecordsByType(TYPE_NAME).size();
+    }
+
+    @Override
+    public Object open(boolean loadType) throws Exception {
+        db = new Database(databaseName);
+        return loadType ? db.getRecord(TYPE_NAME, "0") : db.getStatistics(TYPE_NAME);
+    }
+
+    @Override
+    public void close() throws Exception {
+        db.close();
+        db = null;
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        if (db == null) db = new Database(databaseName);
+        db.deleteType(TYPE_NAME);
+        db.close();
+        deleteDatabaseFiles();
+    }
+
+    private void deleteDatabaseFiles() {
+        new File(Catalog.getCatalogFilename(databaseName)).delete();
+        new File(String.format("%s.wal", databaseName)).delete();
+    }
+}
@@ -0,0 +1,64 @@
+package datenbank.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Database startup: reading the catalog alone, and with the first access that loads the type's data file.
+// Each iteration times a single open, including the JMX registration and the start of the version
+// collector that come with it, and the close after it is left out of the score.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 20)
+@Measurement(iterations = 50)
+public class CatalogBenchmark {
+    @Param({"1000", "50000"})
+    int tableSize;
+
+    @Param({"2", "8"})
+    int fieldCount;
+
+    private DatabaseWorkload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workload = DatabaseWorkload.create();
+        workload.setUp("catbench", tableSize, fieldCount);
+        workload.close();
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() throws Exception {
+        workload.close();
+    }
+
+    // runs after the last iteration's close
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        workload.tearDown();
+    }
+
+    @Benchmark
+    public Object open() throws Exception {
+        return workload.open(false);
+    }
+
+    @Benchmark
+    public Object openAndLoadType() throws Exception {
+        return workload.open(true);
+    }
+}
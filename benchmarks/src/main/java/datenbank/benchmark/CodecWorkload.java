@@ -0,0 +1,19 @@
+package datenbank.benchmark;
+
+// see DatabaseWorkload for why the engine is reached through an interface
+public interface CodecWorkload {
+    // prepares a full page of records with fieldCount fields each
+    void setUp(int fieldCount) throws Exception;
+
+    Object encodePage();
+
+    Object decodePage() throws Exception;
+
+    Object encodeRecord();
+
+    Object decodeRecord();
+
+    static CodecWorkload create() throws ReflectiveOperationException {
+        return (CodecWorkload) Class.forName("BenchmarkCodec").getDeclaredConstructor().newInstance();
+    }
+}
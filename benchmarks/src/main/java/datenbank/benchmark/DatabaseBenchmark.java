@@ -0,0 +1,90 @@
+package datenbank.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DatabaseBenchmark {
+    @Param({"1000", "50000"})
+    int tableSize;
+
+    @Param({"2", "8"})
+    int fieldCount;
+
+    DatabaseWorkload workload;
+    private int nextKey;
+    private ArrayList<String> created = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workload = DatabaseWorkload.create();
+        workload.setUp("dbbench", tableSize, fieldCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        workload.tearDown();
+    }
+
+    // keeps the table at tableSize records from one iteration to the next
+    @TearDown(Level.Iteration)
+    public void removeCreated() throws Exception {
+        workload.deleteRecords(created);
+        created.clear();
+    }
+
+    @State(Scope.Thread)
+    public static class PendingDelete {
+        String key;
+        private int next;
+
+        // inserting takes as long as the delete being measured, so the per-invocation setup cost is negligible
+        @Setup(Level.Invocation)
+        public void insert(DatabaseBenchmark benchmark) throws Exception {
+            key = String.valueOf(2 * benchmark.tableSize + next++);
+            benchmark.workload.createRecord(key);
+        }
+    }
+
+    @Benchmark
+    public Object getRecord() throws Exception {
+        return workload.getRecord(String.valueOf(ThreadLocalRandom.current().nextInt(tableSize)));
+    }
+
+    @Benchmark
+    public void createRecord() throws Exception {
+        String key = String.valueOf(tableSize + nextKey++);
+        workload.createRecord(key);
+        created.add(key);
+    }
+
+    @Benchmark
+    public void deleteRecord(PendingDelete pending) throws Exception {
+        workload.deleteRecord(pending.key);
+    }
+
+    @Benchmark
+    public int getRecordsByType() throws Exception {
+        return workload.getRecordsByType();
+    }
+}
@@ -0,0 +1,33 @@
+package datenbank.benchmark;
+
+import java.util.List;
+
+// The engine lives in the unnamed package, which code in a named package cannot refer to, and JMH
+// only accepts benchmarks in a named package. The engine calls therefore sit behind these interfaces,
+// implemented by classes in the unnamed package and loaded once per trial.
+public interface DatabaseWorkload {
+    // creates the database with one type holding tableSize records of fieldCount fields each
+    void setUp(String databaseName, int tableSize, int fieldCount) throws Exception;
+
+    void createRecord(String key) throws Exception;
+
+    void deleteRecord(String key) throws Exception;
+
+    void deleteRecords(List<String> keys) throws Exception;
+
+    Object getRecord(String key) throws Exception;
+
+    int getRecordsByType() throws Exception;
+
+    // opens the database again after close(), loading the type's data file too when asked to
+    Object open(boolean loadType) throws Exception;
+
+    void close() throws Exception;
+
+    // deletes the type and the database files
+    void tearDown() throws Exception;
+
+    static DatabaseWorkload create() throws ReflectiveOperationException {
+        return (DatabaseWorkload) Class.forName("BenchmarkDatabase").getDeclaredConstructor().newInstance();
+    }
+}
@@ -0,0 +1,56 @@
+package datenbank.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// binary page and record encoding, without any file I/O
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PageBenchmark {
+    @Param({"2", "8"})
+    int fieldCount;
+
+    private CodecWorkload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workload = CodecWorkload.create();
+        workload.setUp(fieldCount);
+    }
+
+    @Benchmark
+    public Object encodePage() {
+        return workload.encodePage();
+    }
+
+    @Benchmark
+    public Object decodePage() throws Exception {
+        return workload.decodePage();
+    }
+
+    @Benchmark
+    public Object encodeRecord() {
+        return workload.encodeRecord();
+    }
+
+    @Benchmark
+    public Object decodeRecord() {
+        return workload.decodeRecord();
+    }
+}
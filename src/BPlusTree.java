@@ -0,0 +1,356 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Maps record keys to their slots in key order. Node 0 holds the header, every other node is one
+// NODE_SIZE block of the file. Deletes do not merge underfull nodes; a rebuild packs the tree again.
+class BPlusTree {
+    static final int NODE_SIZE = 4096;
+    static final int CACHE_NODES = 256;
+    private static final int MAGIC = 0x44544e42;
+    private static final int VERSION = 1;
+    private static final int HEADER_NODE = 0;
+    // magic, version, clean flag, root node, node count, entry count
+    private static final int CLEAN_FLAG_OFFSET = 2 * Integer.BYTES;
+    private static final int KEY_LENGTH = StringCodec.getEncodedLength(Record.MAX_FIELD_VALUE_LENGTH);
+    // leaf flag, key count, next leaf
+    private static final int NODE_HEADER_SIZE = 1 + Short.BYTES + Integer.BYTES;
+    // key, page id, slot
+    static final int LEAF_ORDER = (NODE_SIZE - NODE_HEADER_SIZE) / (KEY_LENGTH + Integer.BYTES + Short.BYTES);
+    // keys, with one more child pointer than keys
+    static final int INTERNAL_ORDER = (NODE_SIZE - NODE_HEADER_SIZE - Integer.BYTES) / (KEY_LENGTH + Integer.BYTES);
+    private String filename;
+    private FileChannel channel;
+    private int root;
+    private int nodeCount;
+    private int size;
+    private boolean clean;
+    // decoded nodes in access order, dirty ones are written back when evicted
+    private LinkedHashMap<Integer, Node> cache;
+
+    private BPlusTree(String filename, FileChannel channel) {
+        this.filename = filename;
+        this.channel = channel;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    static BPlusTree create(String filename) throws IOException {
+        Path path = Paths.get(filename);
+        Files.deleteIfExists(path);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        BPlusTree tree = new BPlusTree(filename, channel);
+        tree.nodeCount = 1;
+        Node leaf = tree.allocateNode(true);
+        tree.root = leaf.id;
+        return tree;
+    }
+
+    // returns null when the tree is missing, unreadable or was not saved after its last change,
+    // so the caller can rebuild it
+    static BPlusTree load(String filename) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(6 * Integer.BYTES);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() < 6 * Integer.BYTES
+                || header.getInt() != MAGIC
+                || header.getInt() != VERSION
+                || header.getInt() != 1) {
+            channel.close();
+            return null;
+        }
+
+        BPlusTree tree = new BPlusTree(filename, channel);
+        tree.root = header.getInt();
+        tree.nodeCount = header.getInt();
+        tree.size = header.getInt();
+        tree.clean = true;
+        if (channel.size() != (long) tree.nodeCount * NODE_SIZE) {
+            channel.close();
+            return null;
+        }
+        return tree;
+    }
+
+    synchronized RecordId get(String key) throws IOException {
+        Node leaf = findLeaf(key);
+        int i = Collections.binarySearch(leaf.keys, key);
+        return i >= 0 ? leaf.values.get(i) : null;
+    }
+
+    // inserts the key, or moves it when it is already in the tree
+    synchronized void put(String key, RecordId rid) throws IOException {
+        markChanged();
+        Split split = insert(getNode(root), key, rid);
+        if (split == null) return;
+
+        Node newRoot = allocateNode(false);
+        newRoot.keys.add(split.key);
+        newRoot.children.add(root);
+        newRoot.children.add(split.right);
+        root = newRoot.id;
+    }
+
+    private Split insert(Node node, String key, RecordId rid) throws IOException {
+        if (node.leaf) {
+            int i = Collections.binarySearch(node.keys, key);
+            if (i >= 0) {
+                node.values.set(i, rid);
+                touch(node);
+                return null;
+            }
+            node.keys.add(-i - 1, key);
+            node.values.add(-i - 1, rid);
+            size++;
+            touch(node);
+            if (node.keys.size() <= LEAF_ORDER) return null;
+
+            Node right = allocateNode(true);
+            int middle = node.keys.size() / 2;
+            moveTail(node.keys, right.keys, middle);
+            moveTail(node.values, right.values, middle);
+            right.next = node.next;
+            node.next = right.id;
+            return new Split(right.keys.get(0), right.id);
+        }
+
+        int i = getChildIndex(node, key);
+        Split split = insert(getNode(node.children.get(i)), key, rid);
+        if (split == null) return null;
+
+        node.keys.add(i, split.key);
+        node.children.add(i + 1, split.right);
+        touch(node);
+        if (node.keys.size() <= INTERNAL_ORDER) return null;
+
+        // the middle key moves up, so it stays in neither half
+        Node right = allocateNode(false);
+        int middle = node.keys.size() / 2;
+        String up = node.keys.get(middle);
+        moveTail(node.keys, right.keys, middle + 1);
+        node.keys.remove(middle);
+        moveTail(node.children, right.children, middle + 1);
+        return new Split(up, right.id);
+    }
+
+    synchronized void remove(String key) throws IOException {
+        Node leaf = findLeaf(key);
+        int i = Collections.binarySearch(leaf.keys, key);
+        if (i < 0) return;
+
+        markChanged();
+        leaf.keys.remove(i);
+        leaf.values.remove(i);
+        size--;
+        touch(leaf);
+    }
+
+    // slots of the keys in [fromKey, toKey] in key order; a null bound is open and limit 0 means no limit
+    synchronized ArrayList<RecordId> range(String fromKey, String toKey, int limit) throws IOException {
+        ArrayList<RecordId> rids = new ArrayList<>();
+        Node leaf = fromKey == null ? findFirstLeaf() : findLeaf(fromKey);
+        int i = fromKey == null ? 0 : lowerBound(leaf.keys, fromKey);
+        while (true) {
+            for (; i < leaf.keys.size(); i++) {
+                if (toKey != null && leaf.keys.get(i).compareTo(toKey) > 0) return rids;
+                rids.add(leaf.values.get(i));
+                if (limit > 0 && rids.size() >= limit) return rids;
+            }
+            if (leaf.next == 0) return rids;
+            leaf = getNode(leaf.next);
+            i = 0;
+        }
+    }
+
+    private Node findLeaf(String key) throws IOException {
+        Node node = getNode(root);
+        while (!node.leaf) {
+            node = getNode(node.children.get(getChildIndex(node, key)));
+        }
+        return node;
+    }
+
+    private Node findFirstLeaf() throws IOException {
+        Node node = getNode(root);
+        while (!node.leaf) {
+            node = getNode(node.children.get(0));
+        }
+        return node;
+    }
+
+    // keys equal to a separator live in its right subtree
+    private static int getChildIndex(Node node, String key) {
+        int i = Collections.binarySearch(node.keys, key);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    private static int lowerBound(List<String> keys, String key) {
+        int i = Collections.binarySearch(keys, key);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    private static <T> void moveTail(List<T> from, List<T> to, int start) {
+        List<T> tail = from.subList(start, from.size());
+        to.addAll(tail);
+        tail.clear();
+    }
+
+    private Node allocateNode(boolean leaf) throws IOException {
+        Node node = new Node(nodeCount++, leaf);
+        touch(node);
+        return node;
+    }
+
+    // (re)inserts the node, so changes to a node that was evicted while the caller held it are not lost
+    private void touch(Node node) throws IOException {
+        node.dirty = true;
+        cache.put(node.id, node);
+        evictIfNeeded();
+    }
+
+    private Node getNode(int id) throws IOException {
+        Node node = cache.get(id);
+        if (node != null) return node;
+
+        ByteBuffer buffer = ByteBuffer.allocate(NODE_SIZE);
+        channel.read(buffer, (long) id * NODE_SIZE);
+        buffer.flip();
+        node = Node.createFromBuffer(id, buffer);
+        cache.put(id, node);
+        evictIfNeeded();
+        return node;
+    }
+
+    private void evictIfNeeded() throws IOException {
+        if (cache.size() <= CACHE_NODES) return;
+
+        Iterator<Map.Entry<Integer, Node>> eldest = cache.entrySet().iterator();
+        Node node = eldest.next().getValue();
+        eldest.remove();
+        if (node.dirty) writeNode(node);
+    }
+
+    private void writeNode(Node node) throws IOException {
+        // always a whole node, so the file length stays a multiple of the node size
+        ByteBuffer buffer = ByteBuffer.allocate(NODE_SIZE);
+        node.writeTo(buffer);
+        buffer.rewind();
+        channel.write(buffer, (long) node.id * NODE_SIZE);
+        node.dirty = false;
+    }
+
+    // a crash after this point leaves the file marked unclean, so the next open rebuilds it
+    private void markChanged() throws IOException {
+        if (!clean) return;
+
+        ByteBuffer flag = ByteBuffer.allocate(Integer.BYTES).putInt(0);
+        flag.flip();
+        channel.write(flag, CLEAN_FLAG_OFFSET);
+        channel.force(false);
+        clean = false;
+    }
+
+    synchronized void save() throws IOException {
+        if (clean) return;
+
+        for (Node node : cache.values()) {
+            if (node.dirty) writeNode(node);
+        }
+        ByteBuffer header = ByteBuffer.allocate(NODE_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(1).putInt(root).putInt(nodeCount).putInt(size);
+        header.rewind();
+        channel.write(header, HEADER_NODE);
+        channel.force(false);
+        clean = true;
+    }
+
+    synchronized void close() throws IOException {
+        save();
+        channel.close();
+        cache.clear();
+    }
+
+    synchronized int getSize() {
+        return size;
+    }
+
+    String getFilename() {
+        return filename;
+    }
+
+    private static class Split {
+        private String key;
+        private int right;
+
+        private Split(String key, int right) {
+            this.key = key;
+            this.right = right;
+        }
+    }
+
+    private static class Node {
+        private int id;
+        private boolean leaf;
+        private ArrayList<String> keys = new ArrayList<>();
+        // leaves only
+        private ArrayList<RecordId> values = new ArrayList<>();
+        private int next;
+        // internal nodes only
+        private ArrayList<Integer> children = new ArrayList<>();
+        private boolean dirty;
+
+        private Node(int id, boolean leaf) {
+            this.id = id;
+            this.leaf = leaf;
+        }
+
+        static Node createFromBuffer(int id, ByteBuffer buffer) {
+            Node node = new Node(id, buffer.get() == 1);
+            int count = buffer.getShort();
+            node.next = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                node.keys.add(StringCodec.get(buffer, Record.MAX_FIELD_VALUE_LENGTH));
+                if (node.leaf) {
+                    node.values.add(new RecordId(buffer.getInt(), buffer.getShort()));
+                } else {
+                    node.children.add(buffer.getInt());
+                }
+            }
+            if (!node.leaf) node.children.add(buffer.getInt());
+            return node;
+        }
+
+        void writeTo(ByteBuffer buffer) {
+            buffer.put((byte) (leaf ? 1 : 0));
+            buffer.putShort((short) keys.size());
+            buffer.putInt(next);
+            for (int i = 0; i < keys.size(); i++) {
+                StringCodec.put(buffer, keys.get(i), Record.MAX_FIELD_VALUE_LENGTH);
+                if (leaf) {
+                    buffer.putInt(values.get(i).getPageId());
+                    buffer.putShort((short) values.get(i).getSlot());
+                } else {
+                    buffer.putInt(children.get(i));
+                }
+            }
+            if (!leaf) buffer.putInt(children.get(keys.size()));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+import java.util.ArrayList;
+
+class BatchResult {
+    enum Status {
+        CREATED,
+        DELETED,
+        DUPLICATE,
+        NOT_FOUND,
+        INVALID
+    }
+
+    private ArrayList<Entry> entries;
+    // log sequence number of the last change in the batch
+    private long lsn;
+
+    BatchResult() {
+        entries = new ArrayList<>();
+    }
+
+    void add(String key, Status status, String message) {
+        entries.add(new Entry(key, status, message));
+    }
+
+    ArrayList<Entry> getEntries() {
+        return entries;
+    }
+
+    int count(Status status) {
+        int count = 0;
+        for (Entry entry : entries) {
+            if (entry.getStatus() == status) count++;
+        }
+        return count;
+    }
+
+    long getLsn() {
+        return lsn;
+    }
+
+    void setLsn(long lsn) {
+        this.lsn = lsn;
+    }
+
+    static class Entry {
+        private String key;
+        private Status status;
+        private String message;
+
+        Entry(String key, Status status, String message) {
+            this.key = key;
+            this.status = status;
+            this.message = message;
+        }
+
+        String getKey() {
+            return key;
+        }
+
+        Status getStatus() {
+            return status;
+        }
+
+        String getMessage() {
+            return message;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+class BufferPool {
+    static final int DEFAULT_CAPACITY = 1024;
+    private int capacity;
+    // access ordered, so iteration starts at the least recently used frame
+    private LinkedHashMap<PageKey, Frame> frames;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    BufferPool(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Buffer pool must hold at least one page");
+        }
+        this.capacity = capacity;
+        this.frames = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    // A missing page is read, and dirty pages evicted for it are written, outside the pool's monitor: the
+    // frame goes in first, pinned and marked as loading, so other threads fetching the same page wait for
+    // it while the rest of the pool stays available.
+    Page fetchPage(Type type, int pageId) throws IOException, InvalidPageException {
+        PageKey key = new PageKey(type, pageId);
+        Frame frame;
+        ArrayList<Map.Entry<PageKey, Frame>> victims;
+        synchronized (this) {
+            while ((frame = frames.get(key)) != null && frame.isBusy()) {
+                waitForFrames();
+            }
+            if (frame != null) {
+                hits++;
+                frame.pinCount++;
+                return frame.page;
+            }
+
+            misses++;
+            frame = new Frame(null);
+            frame.loading = true;
+            frame.pinCount++;
+            victims = evictIfFull();
+            frames.put(key, frame);
+        }
+
+        Page page = null;
+        try {
+            writeBack(victims, true);
+            page = type.readPage(pageId);
+            return page;
+        } finally {
+            synchronized (this) {
+                frame.page = page;
+                frame.loading = false;
+                if (page == null) frames.remove(key, frame);
+                notifyAll();
+            }
+        }
+    }
+
+    // the pooled copy of a page without pinning it or counting a hit, or null when it is not in the pool
+    synchronized Page peekPage(Type type, int pageId) {
+        Frame frame = frames.get(new PageKey(type, pageId));
+        return frame == null ? null : frame.page;
+    }
+
+    Page newPage(Type type, int pageId) throws IOException {
+        Page page = new Page(pageId);
+        ArrayList<Map.Entry<PageKey, Frame>> victims;
+        synchronized (this) {
+            victims = evictIfFull();
+            Frame frame = new Frame(page);
+            frame.pinCount++;
+            frames.put(new PageKey(type, pageId), frame);
+        }
+        writeBack(victims, true);
+        return page;
+    }
+
+    synchronized void unpinPage(Type type, int pageId) {
+        Frame frame = frames.get(new PageKey(type, pageId));
+        if (frame == null || frame.pinCount == 0) return;
+        frame.pinCount--;
+    }
+
+    // Drops unpinned frames from the least recently used end until a new one fits. Dirty pages stay in the
+    // pool, marked as being written, and are returned for the caller to write back outside the monitor.
+    private ArrayList<Map.Entry<PageKey, Frame>> evictIfFull() {
+        ArrayList<Map.Entry<PageKey, Frame>> victims = new ArrayList<>();
+        int size = frames.size();
+        Iterator<Map.Entry<PageKey, Frame>> iterator = frames.entrySet().iterator();
+        while (size >= capacity && iterator.hasNext()) {
+            Map.Entry<PageKey, Frame> entry = iterator.next();
+            Frame frame = entry.getValue();
+            if (frame.pinCount > 0 || frame.isBusy()) continue;
+
+            if (frame.page.isDirty()) {
+                frame.writing = true;
+                victims.add(entry);
+            } else {
+                iterator.remove();
+                evictions++;
+            }
+            size--;
+        }
+        // when every frame is pinned the pool grows past its capacity until pages are unpinned
+        return victims;
+    }
+
+    // writes frames marked as being written without holding the monitor, then drops them from the pool
+    // when they are evicted; a frame that fails to be written stays dirty in the pool
+    private void writeBack(List<Map.Entry<PageKey, Frame>> entries, boolean evict) throws IOException {
+        if (entries.isEmpty()) return;
+
+        try {
+            for (Map.Entry<PageKey, Frame> entry : entries) {
+                entry.getKey().type.writePage(entry.getValue().page);
+            }
+        } finally {
+            synchronized (this) {
+                for (Map.Entry<PageKey, Frame> entry : entries) {
+                    Frame frame = entry.getValue();
+                    frame.writing = false;
+                    if (evict && !frame.page.isDirty() && frames.remove(entry.getKey(), frame)) evictions++;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    private void waitForFrames() throws InterruptedIOException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a page to be read or written");
+        }
+    }
+
+    void flushPages(Type type) throws IOException {
+        ArrayList<Map.Entry<PageKey, Frame>> dirty = new ArrayList<>();
+        synchronized (this) {
+            // an evicted page still being written must reach the file before the caller forces it
+            while (isWriting(type)) {
+                waitForFrames();
+            }
+            for (Map.Entry<PageKey, Frame> entry : frames.entrySet()) {
+                Frame frame = entry.getValue();
+                if (entry.getKey().type == type && frame.page != null && frame.page.isDirty()) {
+                    frame.writing = true;
+                    dirty.add(entry);
+                }
+            }
+        }
+        writeBack(dirty, false);
+    }
+
+    private boolean isWriting(Type type) {
+        for (Map.Entry<PageKey, Frame> entry : frames.entrySet()) {
+            if (entry.getKey().type == type && entry.getValue().writing) return true;
+        }
+        return false;
+    }
+
+    // forgets a page without writing it, for pages cut off the end of the type file
+    synchronized void discardPage(Type type, int pageId) {
+        frames.remove(new PageKey(type, pageId));
+    }
+
+    synchronized void dropPages(Type type) {
+        frames.keySet().removeIf(key -> key.type == type);
+    }
+
+    synchronized int getCapacity() {
+        return capacity;
+    }
+
+    synchronized int getPageCount() {
+        return frames.size();
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    synchronized long getEvictions() {
+        return evictions;
+    }
+
+    private static class Frame {
+        // null while loading
+        private Page page;
+        private int pinCount;
+        private boolean loading;
+        private boolean writing;
+
+        Frame(Page page) {
+            this.page = page;
+        }
+
+        boolean isBusy() {
+            return loading || writing;
+        }
+    }
+
+    private static class PageKey {
+        private Type type;
+        private int pageId;
+
+        PageKey(Type type, int pageId) {
+            this.type = type;
+            this.pageId = pageId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof PageKey)) return false;
+            PageKey other = (PageKey) o;
+            return type == other.type && pageId == other.pageId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(type), pageId);
+        }
+    }
+}
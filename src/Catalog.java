@@ -1,58 +1,155 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 class Catalog {
+    private static final int MAGIC = 0x44544e43;
+    // version 2 appends the type statistics to every entry, version 3 the indexed field mask
+    private static final int VERSION = 3;
+    // magic, version
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
     private String name;
     private ArrayList<Type> types;
-
-    Catalog(String name) throws IOException, InvalidTypeException, InvalidPageException {
+    private BufferPool bufferPool;
+    private StorageMode storageMode;
+    private WriteAheadLog log;
+    private Metrics metrics;
+    private TransactionManager transactions;
+    // guards the type list only, so DDL never waits on record operations
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    Catalog(String name, BufferPool bufferPool, StorageMode storageMode, WriteAheadLog log, Metrics metrics,
+            TransactionManager transactions) throws IOException, InvalidTypeException, InvalidPageException {
         this.name = name;
+        this.bufferPool = bufferPool;
+        this.storageMode = storageMode;
+        this.log = log;
+        this.metrics = metrics;
+        this.transactions = transactions;
+        long start = System.nanoTime();
+        FormatConverter.convertIfNeeded(name);
         createCatalogFileIfNotExists();
         readCatalogFile();
+        metrics.record("catalog.load", start);
     }
 
-    private void readCatalogFile() throws IOException, InvalidTypeException, InvalidPageException {
+    private void readCatalogFile() throws IOException, InvalidTypeException {
         types = new ArrayList<>();
-        FileInputStream stream = new FileInputStream(getCatalogFilename());
-        BufferedReader br = new BufferedReader(new InputStreamReader(stream));
-        String line;
-        while ((line = br.readLine()) != null) {
-            types.add(Type.createFromSerialized(line));
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(Paths.get(getCatalogFilename())));
+        int version = checkHeader(buffer);
+        int entryLength = getEntryLength(version);
+        if (buffer.remaining() % entryLength != 0) {
+            throw new InvalidTypeException(String.format("'%s' ends in a partial type entry", getCatalogFilename()));
+        }
+        while (buffer.hasRemaining()) {
+            Type type = Type.createFromBuffer(buffer);
+            if (version >= 2) type.setStatistics(TypeStatistics.createFromBuffer(buffer));
+            if (version >= 3) type.setIndexMask(buffer.get() & 0xFF);
+            type.open(bufferPool, storageMode, log, metrics, transactions);
+            types.add(type);
         }
     }
 
+    private int checkHeader(ByteBuffer buffer) throws InvalidTypeException {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new InvalidTypeException(String.format("'%s' is not a catalog file", getCatalogFilename()));
+        }
+        int version = buffer.getInt();
+        if (version < 1 || version > VERSION) {
+            throw new InvalidTypeException(String.format("'%s' has unsupported format version %d", getCatalogFilename(), version));
+        }
+        return version;
+    }
+
+    private static int getEntryLength(int version) {
+        return Type.getEncodedLength()
+                + (version >= 2 ? TypeStatistics.ENCODED_LENGTH : 0)
+                + (version >= 3 ? 1 : 0);
+    }
+
     private void createCatalogFileIfNotExists() throws IOException {
         String catalogName = getCatalogFilename();
-        File catalog = new File(catalogName);
-        catalog.createNewFile();
+        if (!new File(catalogName).exists()) {
+            writeCatalogFile(catalogName, new ArrayList<>());
+        }
     }
 
     private String getCatalogFilename() {
-        return String.format("%s.catalog.txt", name);
+        return getCatalogFilename(name);
+    }
+
+    static String getCatalogFilename(String name) {
+        return String.format("%s.catalog.dat", name);
     }
 
     ArrayList<Type> getTypes() {
-        return types;
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(types);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     Type getType(String name) {
+        lock.readLock().lock();
+        try {
+            return findType(name);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Type findType(String name) {
         for (Type type : types) {
             if (type.isNamed(name)) return type;
         }
         return null;
     }
 
-    void createType(String name, ArrayList<String> fields, String keyField) throws IOException, InvalidTypeException {
-        if (getType(name) != null) {
-            Logger.log(String.format("Type '%s' already exists", name));
+    void createType(String name, ArrayList<String> fields, String keyField) throws IOException, InvalidTypeException, InvalidPageException {
+        lock.writeLock().lock();
+        try {
+            if (findType(name) != null) {
+                Logger.info("Type '%s' already exists", name);
+                return;
+            }
+
+            Type type = new Type(name, fields, keyField);
+            createTypeFile(type.getFilename());
+            type.open(bufferPool, storageMode, log, metrics, transactions);
+            types.add(type);
+            updateCatalogFile();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Logger.info("Created type '%s'", name);
+    }
+
+    void createIndex(String typeName, String field) throws IOException, InvalidTypeException, InvalidPageException {
+        Type type = getType(typeName);
+        if (type == null) {
+            throw new InvalidTypeException(String.format("Type '%s' does not exist", typeName));
+        }
+        if (!type.createIndex(field)) {
+            Logger.info("'%s.%s' is already indexed", typeName, field);
             return;
         }
 
-        Type type = new Type(name, fields, keyField);
-        types.add(type);
-        updateCatalogFile();
-        createTypeFile(type.getFilename());
-        Logger.log(String.format("Created type '%s'", name));
+        lock.writeLock().lock();
+        try {
+            updateCatalogFile();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Logger.info("Created index on '%s.%s'", typeName, field);
     }
 
     private void createTypeFile(String filename) throws IOException {
@@ -61,33 +158,67 @@ class Catalog {
     }
 
     private void updateCatalogFile() throws IOException {
-        emptyCatalogFile();
+        long start = System.nanoTime();
+        writeCatalogFile(getCatalogFilename(), types);
+        metrics.record("catalog.write", start);
+    }
 
-        FileWriter fw = new FileWriter(getCatalogFilename(), true);
+    void saveStatistics() throws IOException {
+        lock.writeLock().lock();
+        try {
+            updateCatalogFile();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    static void writeCatalogFile(String filename, ArrayList<Type> types) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + types.size() * getEntryLength(VERSION));
+        buffer.putInt(MAGIC).putInt(VERSION);
         for (Type type : types) {
-            fw.write(type.serialize() + System.lineSeparator());
+            type.writeTo(buffer);
+            type.getStatistics().writeTo(buffer);
+            buffer.put((byte) type.getIndexMask());
+        }
+        // written beside the catalog and moved over it, so a crash leaves either the old or the new file whole
+        Path path = Paths.get(filename);
+        Path temporary = Paths.get(filename + ".tmp");
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(temporary,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
         }
-        fw.close();
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
     }
 
     void deleteType(String name) throws IOException {
-        for (Type type : types) {
-            if (!type.isNamed(name)) continue;
+        Type type;
+        lock.writeLock().lock();
+        try {
+            type = findType(name);
+            if (type == null) return;
 
             types.remove(type);
-            deleteTypeFile(type.getFilename());
             updateCatalogFile();
-            Logger.log(String.format("Type '%s' has been deleted", name));
-            return;
+        } finally {
+            lock.writeLock().unlock();
         }
+
+        // waits for operations already running on the type, without holding up lookups of other types
+        type.drop();
+        deleteTypeFile(type.getFilename());
+        deleteTypeFile(type.getFreeSpaceMapFilename());
+        for (String filename : type.getIndexFilenames()) {
+            deleteTypeFile(filename);
+        }
+        Logger.info("Type '%s' has been deleted", name);
     }
 
     private void deleteTypeFile(String filename) {
         File file = new File(filename);
         file.delete();
     }
-
-    private void emptyCatalogFile() throws FileNotFoundException {
-        new PrintWriter(getCatalogFilename()).close();
-    }
 }
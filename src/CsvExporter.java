@@ -0,0 +1,120 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Writes the records of a type as CSV. A background thread reads the pages into a bounded queue while the
+// calling thread encodes them, so reading and encoding overlap, and the text is encoded straight into one
+// buffer that goes to the sink whenever it fills up. Pages are read one at a time like streamRecords, so
+// changes made during the export may or may not be in it.
+class CsvExporter {
+    static final int QUEUE_PAGES = 64;
+    static final int BUFFER_SIZE = 64 * 1024;
+    // marks the end of the pages in the queue
+    private static final ArrayList<Record> END = new ArrayList<>();
+    private Type type;
+    private WritableByteChannel sink;
+    private ByteBuffer buffer;
+    private CharsetEncoder encoder;
+    private long written;
+
+    CsvExporter(Type type, WritableByteChannel sink) {
+        this.type = type;
+        this.sink = sink;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    // returns the number of bytes written
+    long export() throws IOException, InvalidPageException {
+        int pageCount = type.getPageCount();
+        ArrayBlockingQueue<ArrayList<Record>> pages = new ArrayBlockingQueue<>(QUEUE_PAGES);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> read(pageCount, pages, failure), "datenbank-export");
+        reader.setDaemon(true);
+        reader.start();
+        try {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < type.getFieldCount(); i++) {
+                if (i > 0) text.append(',');
+                Csv.appendValue(text, type.getFields().get(i));
+            }
+            text.append('\n');
+            encode(text);
+
+            ArrayList<Record> records;
+            while ((records = pages.take()) != END) {
+                text.setLength(0);
+                for (Record record : records) {
+                    for (int i = 0; i < type.getFieldCount(); i++) {
+                        if (i > 0) text.append(',');
+                        Csv.appendValue(text, record.getValue(i));
+                    }
+                    text.append('\n');
+                }
+                encode(text);
+            }
+            rethrow(failure.get());
+
+            encoder.encode(CharBuffer.allocate(0), buffer, true);
+            encoder.flush(buffer);
+            drain();
+            return written;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Export was interrupted");
+        } finally {
+            // stops a reader still waiting on a full queue when writing to the sink failed
+            reader.interrupt();
+        }
+    }
+
+    private void read(int pageCount, ArrayBlockingQueue<ArrayList<Record>> pages, AtomicReference<Exception> failure) {
+        try {
+            for (int id = 1; id <= pageCount; id++) {
+                ArrayList<Record> records = type.scanPage(id);
+                if (!records.isEmpty()) pages.put(records);
+            }
+        } catch (InterruptedException e) {
+            return;
+        } catch (IOException | InvalidPageException | RuntimeException e) {
+            failure.set(e);
+        }
+        try {
+            pages.put(END);
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    private static void rethrow(Exception failure) throws IOException, InvalidPageException {
+        if (failure == null) return;
+        if (failure instanceof IOException) throw (IOException) failure;
+        if (failure instanceof InvalidPageException) throw (InvalidPageException) failure;
+        throw (RuntimeException) failure;
+    }
+
+    private void encode(StringBuilder text) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(text);
+        while (encoder.encode(chars, buffer, false) == CoderResult.OVERFLOW) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            written += sink.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -1,14 +1,167 @@
+import javax.management.JMException;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class Database {
+    static final long CHECKPOINT_LOG_SIZE = 4 * 1024 * 1024;
     private Catalog catalog;
     private String name;
+    private BufferPool bufferPool;
+    private WriteAheadLog log;
+    private Metrics metrics;
+    private MetricsBean metricsBean;
+    private TransactionManager transactions;
+    // record changes share this lock; a checkpoint takes it exclusively so it never truncates
+    // log records whose pages have not been written yet
+    private final ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
 
     public Database(String name) throws IOException, InvalidTypeException, InvalidPageException {
+        this(name, BufferPool.DEFAULT_CAPACITY);
+    }
+
+    public Database(String name, int bufferPoolPages) throws IOException, InvalidTypeException, InvalidPageException {
+        this(name, bufferPoolPages, StorageMode.STANDARD);
+    }
+
+    public Database(String name, int bufferPoolPages, StorageMode storageMode) throws IOException, InvalidTypeException, InvalidPageException {
+        long start = System.nanoTime();
         this.name = name;
-        this.catalog = new Catalog(name);
+        this.metrics = new Metrics();
+        this.bufferPool = new BufferPool(bufferPoolPages);
+        this.log = new WriteAheadLog(getLogFilename());
+        this.transactions = new TransactionManager(metrics);
+        this.catalog = new Catalog(name, bufferPool, storageMode, log, metrics, transactions);
+        // only types with log records to replay are loaded here, the rest wait for their first access
+        recover();
+        registerMetrics();
+        transactions.startCollector(catalog::getTypes);
+        metrics.record("database.open", start);
+        Logger.info("Opened database '%s' with %d types in %d ms",
+                name, catalog.getTypes().size(), (System.nanoTime() - start) / 1000000);
+    }
+
+    private String getLogFilename() {
+        return String.format("%s.wal", name);
+    }
+
+    private void recover() throws IOException, InvalidPageException {
+        ArrayList<LogRecord> records = log.readRecords();
+        if (records.isEmpty()) return;
+
+        restorePages(records);
+        Logger.info("Replaying %d log records", records.size());
+        ArrayList<Type> types = catalog.getTypes();
+        for (Type type : types) {
+            type.setReplaying(true);
+        }
+        try {
+            for (LogRecord record : records) {
+                replay(record);
+            }
+        } finally {
+            for (Type type : types) {
+                type.setReplaying(false);
+            }
+        }
+        // the log is only truncated once every replayed page is written, so a crash before then replays it again
+        checkpoint();
+    }
+
+    // the logical replay needs every page readable, so pages torn by the crash are first written back
+    // from the latest image the log holds of them
+    private void restorePages(ArrayList<LogRecord> records) throws IOException, InvalidPageException {
+        LinkedHashMap<String, LinkedHashMap<Integer, byte[]>> images = new LinkedHashMap<>();
+        for (LogRecord record : records) {
+            if (record.getOperation() != LogRecord.PAGE_IMAGE) continue;
+            images.computeIfAbsent(record.getTypeName(), typeName -> new LinkedHashMap<>())
+                    .put(record.getPageId(), record.getImage());
+        }
+
+        int restored = 0;
+        for (Map.Entry<String, LinkedHashMap<Integer, byte[]>> typeImages : images.entrySet()) {
+            Type type = catalog.getType(typeImages.getKey());
+            if (type == null) continue;
+            for (Map.Entry<Integer, byte[]> image : typeImages.getValue().entrySet()) {
+                if (type.restorePage(image.getKey(), image.getValue())) restored++;
+            }
+        }
+        if (restored > 0) Logger.info("Restored %d torn or missing pages from the log", restored);
+    }
+
+    private void replay(LogRecord record) throws IOException, InvalidPageException {
+        if (record.getOperation() == LogRecord.PAGE_IMAGE) return;
+        if (record.getOperation() == LogRecord.COMMIT) {
+            for (LogRecord change : record.getChanges()) {
+                replay(change);
+            }
+            return;
+        }
+
+        Type type = catalog.getType(record.getTypeName());
+        if (type == null) return;
+
+        // all operations are no-ops when the page already reached the disk before the crash; an upsert is
+        // an update, or a record moved by compaction whose values did not change
+        try {
+            if (record.getOperation() == LogRecord.CREATE) {
+                type.createRecord(record.getValues());
+            } else if (record.getOperation() == LogRecord.UPSERT) {
+                type.upsertRecord(record.getValues());
+            } else {
+                type.deleteRecord(record.getKey());
+            }
+        } catch (InvalidRecordException e) {
+            Logger.error(e.getMessage());
+        }
+    }
+
+    private void registerMetrics() {
+        metrics.gauge("bufferPool.hits", bufferPool::getHits);
+        metrics.gauge("bufferPool.misses", bufferPool::getMisses);
+        metrics.gauge("bufferPool.evictions", bufferPool::getEvictions);
+        metrics.gauge("bufferPool.pages", bufferPool::getPageCount);
+        metrics.gauge("log.appends", log::getAppendCount);
+        metrics.gauge("log.syncs", log::getSyncCount);
+        metrics.gauge("log.bytes", log::getSize);
+        metrics.gauge("logger.dropped", Logger::getDroppedCount);
+        metrics.gauge("transactions.open", transactions::getOpenCount);
+        try {
+            metricsBean = new MetricsBean(metrics, name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metricsBean, metricsBean.getObjectName());
+        } catch (Exception e) {
+            // e.g. another open instance of the same database already registered its bean
+            Logger.debug("Metrics of '%s' are not registered with JMX: %s", name, e.getMessage());
+            metricsBean = null;
+        }
+    }
+
+    // counters and gauges by name, and for each latency histogram its count plus mean, p50, p99 and max in microseconds
+    public Map<String, Long> getMetrics() {
+        return metrics.snapshot();
+    }
+
+    BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    WriteAheadLog getLog() {
+        return log;
     }
 
     public ArrayList<Type> getTypes() {
@@ -20,30 +173,435 @@ public class Database {
     }
 
     public void createType(String typeName, ArrayList<String> fields, String keyField) throws IOException, InvalidTypeException, InvalidPageException {
-        catalog.createType(typeName, fields, keyField);
+        long start = System.nanoTime();
+        try {
+            catalog.createType(typeName, fields, keyField);
+        } finally {
+            metrics.record("database.createType", start);
+        }
     }
 
     public void deleteType(String typeName) throws IOException {
-        catalog.deleteType(typeName);
+        long start = System.nanoTime();
+        try {
+            checkpointLock.writeLock().lock();
+            try {
+                // the log must not outlive the type, or a later type with the same name would replay it
+                checkpoint();
+                catalog.deleteType(typeName);
+            } finally {
+                checkpointLock.writeLock().unlock();
+            }
+        } finally {
+            metrics.record("database.deleteType", start);
+        }
     }
 
-    public void createRecord(String typeName, HashMap<String, String> fieldValues) throws IOException, InvalidRecordException {
-        Type type = catalog.getType(typeName);
-        type.createRecord(fieldValues);
+    public void createRecord(String typeName, HashMap<String, String> fieldValues) throws IOException, InvalidRecordException, InvalidPageException {
+        long start = System.nanoTime();
+        try {
+            Type type = catalog.getType(typeName);
+            long lsn;
+            checkpointLock.readLock().lock();
+            try {
+                lsn = type.createRecord(fieldValues);
+            } finally {
+                checkpointLock.readLock().unlock();
+            }
+            // synced outside the lock so concurrent writers can share one group commit
+            log.sync(lsn);
+            checkpointIfNeeded();
+        } finally {
+            metrics.record("database.createRecord", start);
+        }
+    }
+
+    public void deleteRecord(String typeName, String key) throws IOException, InvalidPageException {
+        long start = System.nanoTime();
+        try {
+            Type type = catalog.getType(typeName);
+            long lsn;
+            checkpointLock.readLock().lock();
+            try {
+                lsn = type.deleteRecord(key);
+            } finally {
+                checkpointLock.readLock().unlock();
+            }
+            log.sync(lsn);
+            checkpointIfNeeded();
+        } finally {
+            metrics.record("database.deleteRecord", start);
+        }
     }
 
-    public void deleteRecord(String typeName, String key) throws IOException {
+    // Changes the given fields of the record in place, so only its page is written. A new key value moves
+    // the record to that key; another record with it already fails the update. A missing record is a no-op.
+    public void updateRecord(String typeName, String key, Map<String, String> changes) throws IOException, InvalidRecordException, InvalidPageException {
+        long start = System.nanoTime();
+        try {
+            Type type = catalog.getType(typeName);
+            long lsn;
+            checkpointLock.readLock().lock();
+            try {
+                lsn = type.updateRecord(key, changes);
+            } finally {
+                checkpointLock.readLock().unlock();
+            }
+            log.sync(lsn);
+            checkpointIfNeeded();
+        } finally {
+            metrics.record("database.updateRecord", start);
+        }
+    }
+
+    public BatchResult createRecords(String typeName, List<? extends Map<String, String>> rows) throws IOException, InvalidPageException {
+        long start = System.nanoTime();
+        try {
+            Type type = catalog.getType(typeName);
+            BatchResult result = new BatchResult();
+            checkpointLock.readLock().lock();
+            try {
+                type.createRecords(rows, result);
+            } finally {
+                checkpointLock.readLock().unlock();
+            }
+            log.sync(result.getLsn());
+            checkpointIfNeeded();
+            return result;
+        } finally {
+            metrics.record("database.createRecords", start);
+        }
+    }
+
+    public BatchResult deleteRecords(String typeName, Collection<String> keys) throws IOException, InvalidPageException {
+        long start = System.nanoTime();
+        try {
+            Type type = catalog.getType(typeName);
+            BatchResult result = new BatchResult();
+            checkpointLock.readLock().lock();
+            try {
+                type.deleteRecords(keys, result);
+            } finally {
+                checkpointLock.readLock().unlock();
+            }
+            log.sync(result.getLsn());
+            checkpointIfNeeded();
+            return result;
+        } finally {
+            metrics.record("database.deleteRecords", start);
+        }
+    }
+
+    // starts a transaction that reads every type as of now, see Transaction
+    public Transaction begin() {
+        metrics.increment("transactions.begun");
+        return new Transaction(this, transactions);
+    }
+
+    // Applies the changes of a transaction as one log record. The types are locked in name order, so two
+    // commits never wait for each other's locks; with all of them held, a record changed since the snapshot
+    // fails the commit, and otherwise every change takes the same timestamp.
+    void commit(Transaction transaction) throws IOException, InvalidPageException, TransactionConflictException {
+        long start = System.nanoTime();
+        try {
+            LinkedHashMap<Type, LinkedHashMap<String, Record>> writes = transaction.getWrites();
+            ArrayList<Type> types = new ArrayList<>(writes.keySet());
+            types.sort(Comparator.comparing(Type::getName));
+            long lsn;
+            checkpointLock.readLock().lock();
+            try {
+                int locked = 0;
+                try {
+                    for (Type type : types) {
+                        type.lockForCommit();
+                        locked++;
+                    }
+                    lsn = applyCommit(writes, transaction.getSnapshot());
+                } finally {
+                    for (int i = 0; i < locked; i++) {
+                        types.get(i).unlockAfterCommit();
+                    }
+                }
+            } finally {
+                checkpointLock.readLock().unlock();
+            }
+            log.sync(lsn);
+            checkpointIfNeeded();
+            metrics.increment("transactions.committed");
+        } finally {
+            metrics.record("database.commit", start);
+        }
+    }
+
+    private long applyCommit(Map<Type, LinkedHashMap<String, Record>> writes, long snapshot) throws IOException, InvalidPageException, TransactionConflictException {
+        ArrayList<LogRecord> changes = new ArrayList<>();
+        for (Map.Entry<Type, LinkedHashMap<String, Record>> typeWrites : writes.entrySet()) {
+            Type type = typeWrites.getKey();
+            for (Map.Entry<String, Record> write : typeWrites.getValue().entrySet()) {
+                if (type.getLastChange(write.getKey()) > snapshot) {
+                    metrics.increment("transactions.conflicts");
+                    throw new TransactionConflictException(String.format(
+                            "'%s' record '%s' was changed by a transaction that committed first", type.getName(), write.getKey()));
+                }
+                boolean exists = type.containsKey(write.getKey());
+                if (write.getValue() == null) {
+                    if (exists) changes.add(LogRecord.delete(type.getName(), write.getKey()));
+                } else if (exists) {
+                    changes.add(LogRecord.upsert(type.getName(), write.getValue().getFieldValues()));
+                } else {
+                    changes.add(LogRecord.create(type.getName(), write.getValue().getFieldValues()));
+                }
+            }
+        }
+        // the deletes of records that were already gone
+        if (changes.isEmpty()) return 0;
+
+        long timestamp = transactions.nextTimestamp();
+        long lsn = log.append(LogRecord.commit(changes));
+        for (Map.Entry<Type, LinkedHashMap<String, Record>> typeWrites : writes.entrySet()) {
+            for (Map.Entry<String, Record> write : typeWrites.getValue().entrySet()) {
+                typeWrites.getKey().applyChange(write.getKey(), write.getValue(), lsn, timestamp);
+            }
+        }
+        return lsn;
+    }
+
+    // Streams a CSV file with a header line into the type. Rows that fail validation are skipped and
+    // described in the result, with the number of rows loaded and the rows per second.
+    public LoadResult bulkLoad(String typeName, Path csvFile) throws IOException, InvalidPageException, InvalidRecordException {
+        long start = System.nanoTime();
+        try {
+            Type type = catalog.getType(typeName);
+            LoadResult result = new LoadResult();
+            // The loaded pages are not logged, so a replayed delete must not find a loaded row with its key.
+            // Holding the lock from the first checkpoint to the last keeps the log empty during the load,
+            // since other writers wait for it.
+            checkpointLock.writeLock().lock();
+            try (BufferedReader reader = Files.newBufferedReader(csvFile)) {
+                checkpoint();
+                type.bulkLoad(reader, result);
+                // saves the free space map, the indexes and the statistics that now cover the loaded pages
+                checkpoint();
+            } finally {
+                checkpointLock.writeLock().unlock();
+            }
+            result.finish();
+            metrics.add("bulkLoad.rows", result.getLoadedCount());
+            Logger.info("Loaded %d rows into '%s' in %d ms (%.0f rows/s), rejected %d",
+                    result.getLoadedCount(), typeName, result.getElapsedMillis(), result.getRowsPerSecond(), result.getRejectedCount());
+            return result;
+        } finally {
+            metrics.record("database.bulkLoad", start);
+        }
+    }
+
+    public Record getRecord(String typeName, String key) throws IOException, InvalidPageException {
+        long start = System.nanoTime();
+        try {
+            Type type = catalog.getType(typeName);
+            return type.getRecord(key);
+        } finally {
+            metrics.record("database.getRecord", start);
+        }
+    }
+
+    public ArrayList<Record> getRecordsByType(String typeName) throws IOException, InvalidPageException {
+        long start = System.nanoTime();
+        try {
+            Type type = catalog.getType(typeName);
+            return type.getRecords();
+        } finally {
+            metrics.record("database.getRecordsByType", start);
+        }
+    }
+
+    public void createIndex(String typeName, String fieldName) throws IOException, InvalidTypeException, InvalidPageException {
+        long start = System.nanoTime();
+        try {
+            catalog.createIndex(typeName, fieldName);
+        } finally {
+            metrics.record("database.createIndex", start);
+        }
+    }
+
+    public ArrayList<Record> findRecords(String typeName, String fieldName, String value) throws IOException, InvalidTypeException, InvalidPageException {
+        long start = System.nanoTime();
+        try {
+            Type type = catalog.getType(typeName);
+            return type.findRecords(fieldName, value);
+        } finally {
+            metrics.record("database.findRecords", start);
+        }
+    }
+
+    // keys compare as strings; with an index on the key field this walks the B+ tree, otherwise it sorts a full scan
+    public ArrayList<Record> rangeScan(String typeName, String fromKey, String toKey, int limit) throws IOException, InvalidPageException {
+        long start = System.nanoTime();
+        try {
+            Type type = catalog.getType(typeName);
+            return type.rangeScan(fromKey, toKey, limit);
+        } finally {
+            metrics.record("database.rangeScan", start);
+        }
+    }
+
+    // Moves records from the last pages into the free slots of earlier ones and truncates the emptied pages,
+    // one page per step, so readers and writers only wait for a single page's moves at a time. Pages that
+    // keep their records also keep their ids, and a stream running alongside may miss the moved records.
+    // Returns the number of bytes the type file shrank by, which for a MAPPED type only counts whole chunks of
+    // MappedTypeFile.CHUNK_PAGES pages.
+    public long compact(String typeName) throws IOException, InvalidPageException {
+        long start = System.nanoTime();
+        try {
+            Type type = catalog.getType(typeName);
+            int pageCount = type.getPageCount();
+            long fileSize = type.getFileSize();
+            while (true) {
+                long lsn;
+                checkpointLock.readLock().lock();
+                try {
+                    lsn = type.compactLastPage();
+                } finally {
+                    checkpointLock.readLock().unlock();
+                }
+                if (lsn < 0) break;
+
+                // the emptied page may only leave the file once the moves out of it are durable
+                log.sync(lsn);
+                checkpointLock.readLock().lock();
+                try {
+                    // a writer refilled the page between the two steps
+                    if (type.truncateEmptyPages() == 0) break;
+                } finally {
+                    checkpointLock.readLock().unlock();
+                }
+            }
+            // the moves do not need replaying once the pages, the free space map and the statistics are saved
+            checkpoint();
+            // what the file actually shrank by: a mapped file only gives back whole chunks, and writers
+            // may have added pages meanwhile
+            long reclaimed = Math.max(0, fileSize - type.getFileSize());
+            metrics.add("compaction.bytesReclaimed", reclaimed);
+            Logger.info("Compacted '%s' from %d to %d pages, reclaiming %d bytes",
+                    typeName, pageCount, type.getPageCount(), reclaimed);
+            return reclaimed;
+        } finally {
+            metrics.record("database.compact", start);
+        }
+    }
+
+    // Streams the type to the sink and returns the number of bytes written. BINARY copies the type file
+    // after a checkpoint, holding off record changes in every type until the copy is done; CSV reads the
+    // pages while it runs, like streamRecords, and blocks nothing.
+    public long export(String typeName, WritableByteChannel sink, ExportFormat format) throws IOException, InvalidPageException {
+        long start = System.nanoTime();
+        try {
+            Type type = catalog.getType(typeName);
+            long written;
+            if (format == ExportFormat.CSV) {
+                written = new CsvExporter(type, sink).export();
+            } else {
+                checkpointLock.writeLock().lock();
+                try {
+                    // with every page written and record changes waiting on the lock, the file is current and stays so
+                    checkpoint();
+                    written = type.transferTo(sink);
+                } finally {
+                    checkpointLock.writeLock().unlock();
+                }
+            }
+            metrics.add("export.bytes", written);
+            Logger.info("Exported '%s' as %s, %d bytes in %d ms", typeName, format, written, (System.nanoTime() - start) / 1000000);
+            return written;
+        } finally {
+            metrics.record("database.export", start);
+        }
+    }
+
+    // the stream is not closed
+    public long export(String typeName, OutputStream out, ExportFormat format) throws IOException, InvalidPageException {
+        return export(typeName, Channels.newChannel(out), format);
+    }
+
+    public Query query(String typeName) {
         Type type = catalog.getType(typeName);
-        type.deleteRecord(key);
+        return new Query(type, metrics);
     }
 
-    public Record getRecord(String typeName, String key) {
+    public TypeStatistics getStatistics(String typeName) {
         Type type = catalog.getType(typeName);
-        return type.getRecord(key);
+        return type.getStatistics();
     }
 
-    public ArrayList<Record> getRecordsByType(String typeName) {
+    // pages are read one at a time as the stream is consumed, and .parallel() splits the scan by page ranges
+    public Stream<Record> streamRecords(String typeName) throws IOException, InvalidPageException {
         Type type = catalog.getType(typeName);
-        return type.getRecords();
+        metrics.increment("database.streamRecords.count");
+        return StreamSupport.stream(new PageSpliterator(type, 1, type.getPageCount() + 1), false);
+    }
+
+    public void force() throws IOException {
+        long start = System.nanoTime();
+        try {
+            for (Type type : catalog.getTypes()) {
+                type.force();
+            }
+        } finally {
+            metrics.record("database.force", start);
+        }
+    }
+
+    public void checkpoint() throws IOException {
+        long start = System.nanoTime();
+        try {
+            checkpointLock.writeLock().lock();
+            try {
+                force();
+                catalog.saveStatistics();
+                log.truncate();
+            } finally {
+                checkpointLock.writeLock().unlock();
+            }
+        } finally {
+            metrics.record("database.checkpoint", start);
+        }
+    }
+
+    private void checkpointIfNeeded() throws IOException {
+        if (log.getSize() < CHECKPOINT_LOG_SIZE) return;
+
+        checkpointLock.writeLock().lock();
+        try {
+            // another writer may have checkpointed while this one waited for the lock
+            if (log.getSize() >= CHECKPOINT_LOG_SIZE) checkpoint();
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    public void close() throws IOException {
+        transactions.stopCollector();
+        checkpointLock.writeLock().lock();
+        try {
+            checkpoint();
+            for (Type type : catalog.getTypes()) {
+                type.close();
+            }
+            log.close();
+            unregisterMetrics();
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    private void unregisterMetrics() {
+        if (metricsBean == null) return;
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsBean.getObjectName());
+        } catch (JMException e) {
+            Logger.debug("Metrics of '%s' could not be unregistered: %s", name, e.getMessage());
+        }
+        metricsBean = null;
     }
 }
@@ -15,7 +15,11 @@ public class DatabaseCLI {
     private final int COMMAND_DELETE_RECORD = 5;
     private final int COMMAND_FIND_RECORD = 6;
     private final int COMMAND_LIST_RECORDS = 7;
-    private final int MAX_COMMAND = 7;
+    private final int COMMAND_CREATE_INDEX = 8;
+    private final int COMMAND_FIND_RECORDS = 9;
+    private final int COMMAND_COMPACT_TYPE = 10;
+    private final int COMMAND_UPDATE_RECORD = 11;
+    private final int MAX_COMMAND = 11;
 
     private Database db;
     private Scanner scanner;
@@ -36,6 +40,8 @@ public class DatabaseCLI {
             }
 
             runCommand(command);
+            // log lines are written in the background, let them out before the next prompt
+            Logger.flush();
             System.out.println("Done.\n\n");
         }
     }
@@ -52,11 +58,15 @@ public class DatabaseCLI {
         System.out.println(String.format("\t%d - Create a type", COMMAND_CREATE_TYPE));
         System.out.println(String.format("\t%d - Delete a type", COMMAND_DELETE_TYPE));
         System.out.println(String.format("\t%d - List all types", COMMAND_LIST_TYPES));
+        System.out.println(String.format("\t%d - Create an index", COMMAND_CREATE_INDEX));
+        System.out.println(String.format("\t%d - Compact a type", COMMAND_COMPACT_TYPE));
         System.out.println("# DML Operations");
         System.out.println(String.format("\t%d - Create a record", COMMAND_CREATE_RECORD));
+        System.out.println(String.format("\t%d - Update a record", COMMAND_UPDATE_RECORD));
         System.out.println(String.format("\t%d - Delete a record", COMMAND_DELETE_RECORD));
         System.out.println(String.format("\t%d - Find a record", COMMAND_FIND_RECORD));
         System.out.println(String.format("\t%d - List all records", COMMAND_LIST_RECORDS));
+        System.out.println(String.format("\t%d - Find records by field", COMMAND_FIND_RECORDS));
 
         return scanner.nextInt();
     }
@@ -75,6 +85,9 @@ public class DatabaseCLI {
             case COMMAND_CREATE_RECORD:
                 createRecord();
                 break;
+            case COMMAND_UPDATE_RECORD:
+                updateRecord();
+                break;
             case COMMAND_DELETE_RECORD:
                 deleteRecord();
                 break;
@@ -84,6 +97,15 @@ public class DatabaseCLI {
             case COMMAND_LIST_RECORDS:
                 listRecords();
                 break;
+            case COMMAND_CREATE_INDEX:
+                createIndex();
+                break;
+            case COMMAND_FIND_RECORDS:
+                findRecords();
+                break;
+            case COMMAND_COMPACT_TYPE:
+                compactType();
+                break;
         }
     }
 
@@ -139,11 +161,21 @@ public class DatabaseCLI {
             System.out.println(type.getName());
             System.out.println(String.format("\tFields: %s", fields));
             System.out.println(String.format("\tKey: %s", type.getKeyField()));
-            System.out.println(String.format("\tRecords: %d", type.getRecords().size()));
+            TypeStatistics statistics = db.getStatistics(type.getName());
+            System.out.println(String.format("\tRecords: %d", statistics.getRecordCount()));
+            System.out.println(String.format("\tPages: %d (%d free slots, %d bytes)",
+                    statistics.getPageCount(), statistics.getFreeSlots(), statistics.getBytesOnDisk()));
         }
     }
 
-    private void createRecord() throws IOException, InvalidRecordException {
+    private void compactType() throws IOException, InvalidPageException {
+        displayAvailableTypes();
+        Type type = getType();
+        long reclaimed = db.compact(type.getName());
+        System.out.println(String.format("Reclaimed %d bytes", reclaimed));
+    }
+
+    private void createRecord() throws IOException, InvalidRecordException, InvalidPageException {
         displayAvailableTypes();
 
         Type type = getType();
@@ -158,7 +190,23 @@ public class DatabaseCLI {
         db.createRecord(type.getName(), values);
     }
 
-    private void deleteRecord() throws IOException {
+    private void updateRecord() throws IOException, InvalidRecordException, InvalidPageException {
+        displayAvailableTypes();
+        Type type = getType();
+
+        System.out.println(String.format("Type in a '%s' value of for the record of type '%s'", type.getKeyField(), type.getName()));
+        String key = scanner.next();
+        System.out.println("Type in the new field values, an empty line keeps a value");
+        HashMap<String, String> changes = new HashMap<>();
+        for (String fieldName : type.getFields()) {
+            System.out.println(String.format("%s:", fieldName));
+            String value = scanner.next();
+            if (!value.isEmpty()) changes.put(fieldName, value);
+        }
+        db.updateRecord(type.getName(), key, changes);
+    }
+
+    private void deleteRecord() throws IOException, InvalidPageException {
         displayAvailableTypes();
         Type type = getType();
 
@@ -167,7 +215,7 @@ public class DatabaseCLI {
         db.deleteRecord(type.getName(), key);
     }
 
-    private void findRecord() {
+    private void findRecord() throws IOException, InvalidPageException {
         displayAvailableTypes();
         Type type = getType();
 
@@ -182,19 +230,42 @@ public class DatabaseCLI {
         printRecord(type, record);
     }
 
-    private void listRecords() {
+    private void listRecords() throws IOException, InvalidPageException {
         displayAvailableTypes();
         Type type = getType();
         System.out.println(String.format("Listing records for type '%s'", type.getName()));
-        for (Record record : type.getRecords()) {
+        db.streamRecords(type.getName()).forEach(record -> printRecord(type, record));
+    }
+
+    private void createIndex() throws IOException, InvalidTypeException, InvalidPageException {
+        displayAvailableTypes();
+        Type type = getType();
+
+        System.out.println(String.format("Type in the field to index (%s)", String.join(", ", type.getFields())));
+        String field = scanner.next();
+        db.createIndex(type.getName(), field);
+    }
+
+    private void findRecords() throws IOException, InvalidTypeException, InvalidPageException {
+        displayAvailableTypes();
+        Type type = getType();
+
+        System.out.println(String.format("Type in the field to search (%s)", String.join(", ", type.getFields())));
+        String field = scanner.next();
+        System.out.println(String.format("Type in a '%s' value", field));
+        String value = scanner.next();
+        ArrayList<Record> records = db.findRecords(type.getName(), field, value);
+        System.out.println(String.format("Found %d records:", records.size()));
+        for (Record record : records) {
             printRecord(type, record);
         }
     }
 
     private void printRecord(Type type, Record record) {
         System.out.println(String.format("Key(%s): %s", type.getKeyField(), record.getKeyValue()));
-        for (String fieldName : type.getFields()) {
-            System.out.println(String.format("\t%s: %s", fieldName, record.getValueOf(fieldName)));
+        ArrayList<String> fields = type.getFields();
+        for (int i = 0; i < fields.size(); i++) {
+            System.out.println(String.format("\t%s: %s", fields.get(i), record.getValue(i)));
         }
     }
 }
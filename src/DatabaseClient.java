@@ -0,0 +1,253 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// One connection to a DatabaseServer. The methods send a request and wait for its response; a pipeline
+// instead sends any number of requests and reads all their responses at once. A client is not thread safe,
+// concurrent callers open a connection each.
+public class DatabaseClient implements Closeable {
+    // a pipeline reads back the responses every this many requests, so the server never blocks writing
+    // responses while the client is still blocked writing requests
+    static final int MAX_IN_FLIGHT = 256;
+    private Socket socket;
+    private DataInputStream in;
+    private DataOutputStream out;
+
+    // failures reported by the server; the connection stays usable after one
+    public static class ServerException extends IOException {
+        ServerException(String message) {
+            super(message);
+        }
+    }
+
+    private interface Encoder {
+        void write(DataOutputStream request) throws IOException;
+    }
+
+    private interface Decoder<T> {
+        T read(DataInputStream response) throws IOException;
+    }
+
+    private static final Decoder<Void> NO_RESULT = response -> null;
+    private static final Decoder<HashMap<String, String>> RECORD = Protocol::readValues;
+    private static final Decoder<List<HashMap<String, String>>> RECORDS = response -> {
+        int count = response.readInt();
+        List<HashMap<String, String>> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            records.add(Protocol.readValues(response));
+        }
+        return records;
+    };
+
+    public DatabaseClient(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    public void createType(String typeName, List<String> fields, String keyField) throws IOException {
+        call(Protocol.CREATE_TYPE, request -> {
+            request.writeUTF(typeName);
+            Protocol.writeStrings(request, fields);
+            request.writeUTF(keyField);
+        }, NO_RESULT);
+    }
+
+    public void deleteType(String typeName) throws IOException {
+        call(Protocol.DELETE_TYPE, request -> request.writeUTF(typeName), NO_RESULT);
+    }
+
+    public void createRecord(String typeName, Map<String, String> values) throws IOException {
+        call(Protocol.CREATE_RECORD, createRecordRequest(typeName, values), NO_RESULT);
+    }
+
+    public void deleteRecord(String typeName, String key) throws IOException {
+        call(Protocol.DELETE_RECORD, keyRequest(typeName, key), NO_RESULT);
+    }
+
+    // only the fields in changes are changed; a new key value moves the record
+    public void updateRecord(String typeName, String key, Map<String, String> changes) throws IOException {
+        call(Protocol.UPDATE_RECORD, request -> {
+            request.writeUTF(typeName);
+            request.writeUTF(key);
+            Protocol.writeValues(request, changes);
+        }, NO_RESULT);
+    }
+
+    // field name to value, or null when there is no record with the key
+    public HashMap<String, String> getRecord(String typeName, String key) throws IOException {
+        return call(Protocol.GET_RECORD, keyRequest(typeName, key), RECORD);
+    }
+
+    public List<HashMap<String, String>> getRecords(String typeName) throws IOException {
+        return call(Protocol.GET_RECORDS, request -> request.writeUTF(typeName), RECORDS);
+    }
+
+    public List<HashMap<String, String>> findRecords(String typeName, String field, String value) throws IOException {
+        return call(Protocol.FIND_RECORDS, request -> {
+            request.writeUTF(typeName);
+            request.writeUTF(field);
+            request.writeUTF(value);
+        }, RECORDS);
+    }
+
+    public List<HashMap<String, String>> rangeScan(String typeName, String fromKey, String toKey, int limit) throws IOException {
+        return call(Protocol.RANGE_SCAN, request -> {
+            request.writeUTF(typeName);
+            Protocol.writeNullableString(request, fromKey);
+            Protocol.writeNullableString(request, toKey);
+            request.writeInt(limit);
+        }, RECORDS);
+    }
+
+    // each condition is a field, an operator symbol and a value, as in Query.where; no columns selects every field
+    public List<String[]> query(String typeName, List<String[]> conditions, List<String> columns, int limit) throws IOException {
+        return call(Protocol.QUERY, request -> {
+            request.writeUTF(typeName);
+            request.writeShort(conditions.size());
+            for (String[] condition : conditions) {
+                request.writeUTF(condition[0]);
+                request.writeUTF(condition[1]);
+                request.writeUTF(condition[2]);
+            }
+            Protocol.writeStrings(request, columns);
+            request.writeInt(limit);
+        }, response -> {
+            Protocol.readStrings(response);
+            int count = response.readInt();
+            List<String[]> rows = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                rows.add(Protocol.readStrings(response));
+            }
+            return rows;
+        });
+    }
+
+    public void createIndex(String typeName, String field) throws IOException {
+        call(Protocol.CREATE_INDEX, request -> {
+            request.writeUTF(typeName);
+            request.writeUTF(field);
+        }, NO_RESULT);
+    }
+
+    // returns the number of bytes reclaimed
+    public long compact(String typeName) throws IOException {
+        return call(Protocol.COMPACT, request -> request.writeUTF(typeName), DataInputStream::readLong);
+    }
+
+    public void checkpoint() throws IOException {
+        call(Protocol.CHECKPOINT, request -> {
+        }, NO_RESULT);
+    }
+
+    public Pipeline pipeline() {
+        return new Pipeline();
+    }
+
+    private static Encoder createRecordRequest(String typeName, Map<String, String> values) {
+        return request -> {
+            request.writeUTF(typeName);
+            Protocol.writeValues(request, values);
+        };
+    }
+
+    private static Encoder keyRequest(String typeName, String key) {
+        return request -> {
+            request.writeUTF(typeName);
+            request.writeUTF(key);
+        };
+    }
+
+    private <T> T call(byte operation, Encoder encoder, Decoder<T> decoder) throws IOException {
+        send(operation, encoder);
+        out.flush();
+        return receive(decoder);
+    }
+
+    private void send(byte operation, Encoder encoder) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream request = new DataOutputStream(body);
+        request.writeByte(operation);
+        encoder.write(request);
+        Protocol.writeFrame(out, body);
+    }
+
+    private <T> T receive(Decoder<T> decoder) throws IOException {
+        byte[] frame = Protocol.readFrame(in);
+        if (frame == null) throw new EOFException("Connection closed by the server");
+
+        DataInputStream response = new DataInputStream(new ByteArrayInputStream(frame));
+        byte status = response.readByte();
+        if (status == Protocol.ERROR) throw new ServerException(response.readUTF());
+        if (status == Protocol.NOT_FOUND) return null;
+        return decoder.read(response);
+    }
+
+    // Requests are written as they are added and answered in order by execute, one result per request:
+    // the record for getRecord and null for the others.
+    public class Pipeline {
+        private ArrayList<Decoder<?>> pending = new ArrayList<>();
+        private ArrayList<Object> results = new ArrayList<>();
+        private ServerException failure;
+
+        private Pipeline() {
+        }
+
+        public Pipeline createRecord(String typeName, Map<String, String> values) throws IOException {
+            return add(Protocol.CREATE_RECORD, createRecordRequest(typeName, values), NO_RESULT);
+        }
+
+        public Pipeline deleteRecord(String typeName, String key) throws IOException {
+            return add(Protocol.DELETE_RECORD, keyRequest(typeName, key), NO_RESULT);
+        }
+
+        public Pipeline getRecord(String typeName, String key) throws IOException {
+            return add(Protocol.GET_RECORD, keyRequest(typeName, key), RECORD);
+        }
+
+        private Pipeline add(byte operation, Encoder encoder, Decoder<?> decoder) throws IOException {
+            send(operation, encoder);
+            pending.add(decoder);
+            if (pending.size() >= MAX_IN_FLIGHT) receiveAll();
+            return this;
+        }
+
+        private void receiveAll() throws IOException {
+            out.flush();
+            for (Decoder<?> decoder : pending) {
+                try {
+                    results.add(receive(decoder));
+                } catch (ServerException e) {
+                    // the remaining responses are still read, so the connection stays in step
+                    if (failure == null) failure = e;
+                    results.add(null);
+                }
+            }
+            pending.clear();
+        }
+
+        // throws the first failure reported by the server once every response has been read
+        public List<Object> execute() throws IOException {
+            receiveAll();
+            if (failure != null) throw failure;
+            return results;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,351 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Serves one Database over TCP with the Protocol framing. Every connection gets its own thread, a virtual
+// one when the runtime has them, and its responses are only flushed once no further pipelined request
+// is waiting, so a batch of requests costs one write on each side. Pipelined record changes are also
+// applied as one batch, so they wait for a single log sync instead of one each.
+public class DatabaseServer implements Closeable {
+    public static final int DEFAULT_PORT = 7070;
+    static final int MAX_BATCH = 256;
+    private Database db;
+    private ServerSocket serverSocket;
+    private ExecutorService connections;
+    private Thread acceptor;
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    // port 0 picks a free port, see getPort
+    public DatabaseServer(Database db, int port) throws IOException {
+        this.db = db;
+        this.serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port));
+    }
+
+    public void start() {
+        connections = createConnectionExecutor();
+        acceptor = new Thread(this::accept, "datenbank-server");
+        acceptor.start();
+        Logger.info("Listening on port %d", getPort());
+    }
+
+    // virtual threads only exist from Java 21 on, while the build targets 17, so they are looked up reflectively
+    private static ExecutorService createConnectionExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ExecutorService executor = (ExecutorService) factory.invoke(null);
+            Logger.debug("Serving connections on virtual threads");
+            return executor;
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            Logger.debug("Virtual threads are not available, serving connections on platform threads");
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "datenbank-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                sockets.add(socket);
+                connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!closed) Logger.error("Cannot accept connection: %s", e.getMessage());
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        Logger.debug("Connection from %s", socket.getRemoteSocketAddress());
+        try (Socket connection = socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            byte[] request = Protocol.readFrame(in);
+            while (request != null) {
+                byte[] next = null;
+                if (getChangeHeaderLength(request) < 0 || in.available() == 0) {
+                    response.reset();
+                    handle(request, response);
+                    Protocol.writeFrame(out, response);
+                } else {
+                    // pipelined creates or deletes on one type become a single batch, which shares one log sync
+                    ArrayList<byte[]> batch = new ArrayList<>();
+                    batch.add(request);
+                    while (batch.size() < MAX_BATCH && in.available() > 0) {
+                        next = Protocol.readFrame(in);
+                        if (next == null || !isSameChange(request, next)) break;
+                        batch.add(next);
+                        next = null;
+                    }
+                    handleChanges(batch, out);
+                }
+
+                if (next == null) {
+                    // pipelined requests already on the wire are answered before anything is sent back
+                    if (in.available() == 0) out.flush();
+                    next = Protocol.readFrame(in);
+                }
+                request = next;
+            }
+            out.flush();
+        } catch (SocketException e) {
+            if (!closed) Logger.debug("Connection from %s dropped: %s", socket.getRemoteSocketAddress(), e.getMessage());
+        } catch (IOException e) {
+            Logger.error("Connection from %s failed: %s", socket.getRemoteSocketAddress(), e.getMessage());
+        } finally {
+            sockets.remove(socket);
+        }
+    }
+
+    private void handle(byte[] request, ByteArrayOutputStream body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(request));
+        DataOutputStream response = new DataOutputStream(body);
+        try {
+            byte operation = in.readByte();
+            switch (operation) {
+                case Protocol.CREATE_TYPE: {
+                    String name = in.readUTF();
+                    ArrayList<String> fields = new ArrayList<>(Arrays.asList(Protocol.readStrings(in)));
+                    db.createType(name, fields, in.readUTF());
+                    response.writeByte(Protocol.OK);
+                    break;
+                }
+                case Protocol.DELETE_TYPE:
+                    db.deleteType(getType(in).getName());
+                    response.writeByte(Protocol.OK);
+                    break;
+                case Protocol.CREATE_RECORD: {
+                    Type type = getType(in);
+                    db.createRecord(type.getName(), Protocol.readValues(in));
+                    response.writeByte(Protocol.OK);
+                    break;
+                }
+                case Protocol.DELETE_RECORD: {
+                    Type type = getType(in);
+                    db.deleteRecord(type.getName(), in.readUTF());
+                    response.writeByte(Protocol.OK);
+                    break;
+                }
+                case Protocol.UPDATE_RECORD: {
+                    Type type = getType(in);
+                    String key = in.readUTF();
+                    db.updateRecord(type.getName(), key, Protocol.readValues(in));
+                    response.writeByte(Protocol.OK);
+                    break;
+                }
+                case Protocol.GET_RECORD: {
+                    Type type = getType(in);
+                    Record record = db.getRecord(type.getName(), in.readUTF());
+                    if (record == null) {
+                        response.writeByte(Protocol.NOT_FOUND);
+                        break;
+                    }
+                    response.writeByte(Protocol.OK);
+                    writeRecord(response, type, record);
+                    break;
+                }
+                case Protocol.GET_RECORDS: {
+                    Type type = getType(in);
+                    writeRecords(response, type, db.getRecordsByType(type.getName()));
+                    break;
+                }
+                case Protocol.FIND_RECORDS: {
+                    Type type = getType(in);
+                    String field = in.readUTF();
+                    writeRecords(response, type, db.findRecords(type.getName(), field, in.readUTF()));
+                    break;
+                }
+                case Protocol.RANGE_SCAN: {
+                    Type type = getType(in);
+                    String fromKey = Protocol.readNullableString(in);
+                    String toKey = Protocol.readNullableString(in);
+                    writeRecords(response, type, db.rangeScan(type.getName(), fromKey, toKey, in.readInt()));
+                    break;
+                }
+                case Protocol.QUERY:
+                    query(in, response);
+                    break;
+                case Protocol.CREATE_INDEX: {
+                    Type type = getType(in);
+                    db.createIndex(type.getName(), in.readUTF());
+                    response.writeByte(Protocol.OK);
+                    break;
+                }
+                case Protocol.COMPACT: {
+                    long reclaimed = db.compact(getType(in).getName());
+                    response.writeByte(Protocol.OK);
+                    response.writeLong(reclaimed);
+                    break;
+                }
+                case Protocol.CHECKPOINT:
+                    db.checkpoint();
+                    response.writeByte(Protocol.OK);
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.format("Unknown operation %d", operation));
+            }
+        } catch (Exception e) {
+            // the failed request is answered like any other, so the responses stay in request order
+            Logger.debug("Request failed: %s", e);
+            body.reset();
+            response.writeByte(Protocol.ERROR);
+            response.writeUTF(e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+    }
+
+    // the length of the operation and type name that start a create or delete request, or -1 for other requests
+    private static int getChangeHeaderLength(byte[] request) {
+        if (request.length < 3 || (request[0] != Protocol.CREATE_RECORD && request[0] != Protocol.DELETE_RECORD)) return -1;
+        return 3 + (((request[1] & 0xFF) << 8) | (request[2] & 0xFF));
+    }
+
+    private static boolean isSameChange(byte[] first, byte[] request) {
+        int length = getChangeHeaderLength(first);
+        return getChangeHeaderLength(request) == length
+                && Arrays.equals(first, 0, length, request, 0, length);
+    }
+
+    private void handleChanges(ArrayList<byte[]> batch, DataOutputStream out) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream response = new DataOutputStream(body);
+        BatchResult result;
+        try {
+            String typeName = null;
+            ArrayList<HashMap<String, String>> rows = new ArrayList<>();
+            ArrayList<String> keys = new ArrayList<>();
+            for (byte[] request : batch) {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(request));
+                in.readByte();
+                typeName = getType(in).getName();
+                if (batch.get(0)[0] == Protocol.CREATE_RECORD) {
+                    rows.add(Protocol.readValues(in));
+                } else {
+                    keys.add(in.readUTF());
+                }
+            }
+            result = batch.get(0)[0] == Protocol.CREATE_RECORD
+                    ? db.createRecords(typeName, rows)
+                    : db.deleteRecords(typeName, keys);
+        } catch (Exception e) {
+            Logger.debug("Batch of %d requests failed: %s", batch.size(), e);
+            response.writeByte(Protocol.ERROR);
+            response.writeUTF(e.getMessage() != null ? e.getMessage() : e.toString());
+            for (int i = 0; i < batch.size(); i++) {
+                Protocol.writeFrame(out, body);
+            }
+            return;
+        }
+
+        // duplicates and missing keys are not errors, just as with createRecord and deleteRecord
+        for (BatchResult.Entry entry : result.getEntries()) {
+            body.reset();
+            if (entry.getStatus() == BatchResult.Status.INVALID) {
+                response.writeByte(Protocol.ERROR);
+                response.writeUTF(entry.getMessage());
+            } else {
+                response.writeByte(Protocol.OK);
+            }
+            Protocol.writeFrame(out, body);
+        }
+    }
+
+    private Type getType(DataInputStream in) throws IOException, InvalidTypeException {
+        String name = in.readUTF();
+        Type type = db.getType(name);
+        if (type == null) throw new InvalidTypeException(String.format("Type '%s' does not exist", name));
+        return type;
+    }
+
+    private void query(DataInputStream in, DataOutputStream response) throws Exception {
+        Query query = db.query(getType(in).getName());
+        int conditions = in.readUnsignedShort();
+        for (int i = 0; i < conditions; i++) {
+            query.where(in.readUTF(), in.readUTF(), in.readUTF());
+        }
+        String[] columns = Protocol.readStrings(in);
+        if (columns.length > 0) query.select(columns);
+        query.limit(in.readInt());
+
+        ArrayList<String[]> rows = query.execute();
+        response.writeByte(Protocol.OK);
+        Protocol.writeStrings(response, query.getColumns());
+        response.writeInt(rows.size());
+        for (String[] row : rows) {
+            Protocol.writeStrings(response, Arrays.asList(row));
+            checkLength(response);
+        }
+    }
+
+    private static void writeRecords(DataOutputStream response, Type type, List<Record> records) throws IOException {
+        response.writeByte(Protocol.OK);
+        response.writeInt(records.size());
+        for (Record record : records) {
+            writeRecord(response, type, record);
+            checkLength(response);
+        }
+    }
+
+    // the client rejects a longer frame, so the request fails here instead, while encoding it
+    private static void checkLength(DataOutputStream response) {
+        if (response.size() > Protocol.MAX_FRAME_LENGTH) {
+            throw new IllegalStateException(String.format(
+                    "The response is longer than %d bytes, ask for fewer records", Protocol.MAX_FRAME_LENGTH));
+        }
+    }
+
+    private static void writeRecord(DataOutputStream response, Type type, Record record) throws IOException {
+        HashMap<String, String> values = new HashMap<>();
+        for (int i = 0; i < type.getFieldCount(); i++) {
+            values.put(type.getFields().get(i), record.getValue(i));
+        }
+        Protocol.writeValues(response, values);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        if (connections == null) return;
+
+        connections.shutdown();
+        try {
+            acceptor.join();
+            connections.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
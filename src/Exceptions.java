@@ -15,3 +15,9 @@ class InvalidRecordException extends Exception {
         super(message);
     }
 }
+
+class TransactionConflictException extends Exception {
+    TransactionConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,6 @@
+public enum ExportFormat {
+    // a header line with the field names, then one line per record
+    CSV,
+    // a copy of the type file, which can stand in for the file of a type with the same fields
+    BINARY
+}
@@ -0,0 +1,58 @@
+import java.io.*;
+import java.util.ArrayList;
+
+class FormatConverter {
+    static void convertIfNeeded(String databaseName) throws IOException, InvalidTypeException, InvalidPageException {
+        File textCatalog = new File(getTextCatalogFilename(databaseName));
+        File binaryCatalog = new File(Catalog.getCatalogFilename(databaseName));
+        if (!textCatalog.exists() || binaryCatalog.exists()) return;
+
+        convert(databaseName);
+    }
+
+    static void convert(String databaseName) throws IOException, InvalidTypeException, InvalidPageException {
+        ArrayList<Type> types = new ArrayList<>();
+        BufferedReader br = new BufferedReader(new FileReader(getTextCatalogFilename(databaseName)));
+        String line;
+        while ((line = br.readLine()) != null) {
+            if (line.trim().isEmpty()) continue;
+            Type type = Type.createFromSerialized(line);
+            convertTypeFile(type);
+            types.add(type);
+        }
+        br.close();
+
+        // written last so an interrupted conversion is simply retried on the next start
+        Catalog.writeCatalogFile(Catalog.getCatalogFilename(databaseName), types);
+        Logger.info("Converted database '%s' to binary format (%d types)", databaseName, types.size());
+    }
+
+    private static void convertTypeFile(Type type) throws IOException, InvalidPageException {
+        new File(type.getFilename()).delete();
+
+        File textFile = new File(getTextTypeFilename(type));
+        if (textFile.exists()) {
+            BufferedReader br = new BufferedReader(new FileReader(textFile));
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+                type.writePage(Page.createFromSerialized(type, line));
+            }
+            br.close();
+        }
+        type.close();
+    }
+
+    private static String getTextCatalogFilename(String databaseName) {
+        return String.format("%s.catalog.txt", databaseName);
+    }
+
+    private static String getTextTypeFilename(Type type) {
+        return String.format("%s.type.txt", type.getName().toLowerCase());
+    }
+
+    public static void main(String[] args) throws IOException, InvalidTypeException, InvalidPageException {
+        String databaseName = args.length > 0 ? args[0] : "Datenbank";
+        convert(databaseName);
+    }
+}
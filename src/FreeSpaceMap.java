@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.BitSet;
+
+class FreeSpaceMap {
+    private static final int MAGIC = 0x44544e46;
+    private static final int VERSION = 1;
+    // magic, version, page capacity, page count
+    private static final int HEADER_SIZE = 4 * Integer.BYTES;
+    private String filename;
+    private int capacity;
+    // used slot count per page, indexed by page id - 1
+    private byte[] usedCounts;
+    private int pageCount;
+    private long usedSlots;
+    private BitSet pagesWithSpace;
+    private boolean dirty;
+
+    FreeSpaceMap(String filename, int capacity) {
+        this.filename = filename;
+        this.capacity = capacity;
+        this.usedCounts = new byte[64];
+        this.pagesWithSpace = new BitSet();
+        this.dirty = true;
+    }
+
+    // returns null when the map is missing or unreadable, so the caller can rebuild it
+    static FreeSpaceMap load(String filename, int capacity) throws IOException {
+        ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.wrap(Files.readAllBytes(Paths.get(filename)));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        if (buffer.remaining() < HEADER_SIZE
+                || buffer.getInt() != MAGIC
+                || buffer.getInt() != VERSION
+                || buffer.getInt() != capacity) {
+            return null;
+        }
+        int pageCount = buffer.getInt();
+        if (buffer.remaining() != pageCount) return null;
+
+        FreeSpaceMap map = new FreeSpaceMap(filename, capacity);
+        for (int id = 1; id <= pageCount; id++) {
+            map.allocatePage();
+            map.setUsed(id, buffer.get());
+        }
+        map.dirty = false;
+        return map;
+    }
+
+    void save() throws IOException {
+        if (!dirty) return;
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + pageCount);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(capacity).putInt(pageCount);
+        buffer.put(usedCounts, 0, pageCount);
+        Files.write(Paths.get(filename), buffer.array());
+        dirty = false;
+    }
+
+    int allocatePage() {
+        if (pageCount == usedCounts.length) {
+            usedCounts = Arrays.copyOf(usedCounts, usedCounts.length * 2);
+        }
+        int id = ++pageCount;
+        usedCounts[id - 1] = 0;
+        pagesWithSpace.set(id);
+        dirty = true;
+        return id;
+    }
+
+    // forgets the pages after the given count, as when the type file is truncated
+    void truncate(int pageCount) {
+        while (this.pageCount > pageCount) {
+            usedSlots -= usedCounts[this.pageCount - 1];
+            usedCounts[this.pageCount - 1] = 0;
+            pagesWithSpace.clear(this.pageCount);
+            this.pageCount--;
+            dirty = true;
+        }
+    }
+
+    // lowest page id with a free slot, or -1 when every page is full
+    int findPageWithSpace() {
+        return pagesWithSpace.nextSetBit(1);
+    }
+
+    void setUsed(int pageId, int used) {
+        if (usedCounts[pageId - 1] == used) return;
+
+        usedSlots += used - usedCounts[pageId - 1];
+        usedCounts[pageId - 1] = (byte) used;
+        pagesWithSpace.set(pageId, used < capacity);
+        dirty = true;
+    }
+
+    int getUsed(int pageId) {
+        return usedCounts[pageId - 1];
+    }
+
+    long getUsedSlots() {
+        return usedSlots;
+    }
+
+    int getPageCount() {
+        return pageCount;
+    }
+
+    String getFilename() {
+        return filename;
+    }
+}
@@ -0,0 +1,103 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+// Drives a DatabaseServer from several connections and reports the throughput, e.g.
+//   java -cp datenbank.jar LoadGenerator localhost 7070 8 10000 32
+// has 8 connections each create, read and delete 10000 records, in pipelines of 32 requests.
+public class LoadGenerator {
+    private static final String TYPE_NAME = "load";
+    private static final int MAX_CONNECTIONS = 99;
+    // a key is two digits of connection and the rest of sequence, which must fit into a field value
+    private static final int SEQUENCE_DIGITS = Record.MAX_FIELD_VALUE_LENGTH - 2;
+    private static final int MAX_RECORDS = (int) Math.pow(10, SEQUENCE_DIGITS);
+    private static final String KEY_FORMAT = "%02d%0" + SEQUENCE_DIGITS + "d";
+
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DatabaseServer.DEFAULT_PORT;
+        int connections = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int records = args.length > 3 ? Integer.parseInt(args[3]) : 10000;
+        int depth = args.length > 4 ? Integer.parseInt(args[4]) : 32;
+        if (connections < 1 || connections > MAX_CONNECTIONS || records < 1 || records > MAX_RECORDS || depth < 1) {
+            System.out.println(String.format("Usage: LoadGenerator [host] [port] [connections 1-%d] [records per connection 1-%d] [pipeline depth]",
+                    MAX_CONNECTIONS, MAX_RECORDS));
+            return;
+        }
+
+        try (DatabaseClient client = new DatabaseClient(host, port)) {
+            client.createType(TYPE_NAME, Arrays.asList("id", "conn", "value"), "id");
+        }
+
+        LongAdder roundTrips = new LongAdder();
+        LongAdder roundTripNanos = new LongAdder();
+        ExecutorService executor = Executors.newFixedThreadPool(connections);
+        long start = System.nanoTime();
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int c = 0; c < connections; c++) {
+            int connection = c;
+            futures.add(executor.submit(() -> run(host, port, connection, records, depth, roundTrips, roundTripNanos)));
+        }
+        long found = 0;
+        for (Future<Integer> future : futures) {
+            found += future.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+
+        long requests = 3L * connections * records;
+        System.out.println(String.format("%d requests over %d connections in %d ms: %.0f requests/s",
+                requests, connections, elapsed / 1000000, requests * 1e9 / elapsed));
+        System.out.println(String.format("%d round trips of up to %d requests, %.1f us on average",
+                roundTrips.sum(), depth, roundTripNanos.sum() / 1000.0 / roundTrips.sum()));
+        if (found != (long) connections * records) {
+            System.out.println(String.format("Read back %d of %d records", found, connections * records));
+        }
+
+        try (DatabaseClient client = new DatabaseClient(host, port)) {
+            client.deleteType(TYPE_NAME);
+        }
+    }
+
+    // creates, reads back and deletes the connection's records; returns the number of records read back
+    private static int run(String host, int port, int connection, int records, int depth,
+                           LongAdder roundTrips, LongAdder roundTripNanos) throws Exception {
+        int found = 0;
+        try (DatabaseClient client = new DatabaseClient(host, port)) {
+            for (int phase = 0; phase < 3; phase++) {
+                for (int first = 0; first < records; first += depth) {
+                    DatabaseClient.Pipeline pipeline = client.pipeline();
+                    for (int i = first; i < Math.min(first + depth, records); i++) {
+                        String key = String.format(KEY_FORMAT, connection, i);
+                        if (phase == 0) {
+                            HashMap<String, String> values = new HashMap<>();
+                            values.put("id", key);
+                            values.put("conn", String.valueOf(connection));
+                            values.put("value", Integer.toString(i, 36));
+                            pipeline.createRecord(TYPE_NAME, values);
+                        } else if (phase == 1) {
+                            pipeline.getRecord(TYPE_NAME, key);
+                        } else {
+                            pipeline.deleteRecord(TYPE_NAME, key);
+                        }
+                    }
+
+                    long start = System.nanoTime();
+                    List<Object> results = pipeline.execute();
+                    roundTripNanos.add(System.nanoTime() - start);
+                    roundTrips.increment();
+                    if (phase != 1) continue;
+                    for (Object result : results) {
+                        if (result != null) found++;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,50 @@
+import java.util.ArrayList;
+
+class LoadResult {
+    // only the first rejected rows are described, the rest are counted
+    static final int MAX_ERRORS = 100;
+    private long loadedCount;
+    private long rejectedCount;
+    private ArrayList<String> errors;
+    private long start;
+    private long elapsedNanos;
+
+    LoadResult() {
+        errors = new ArrayList<>();
+        start = System.nanoTime();
+    }
+
+    void loaded() {
+        loadedCount++;
+    }
+
+    void reject(int lineNumber, String message) {
+        rejectedCount++;
+        if (errors.size() < MAX_ERRORS) errors.add(String.format("Line %d: %s", lineNumber, message));
+    }
+
+    void finish() {
+        elapsedNanos = System.nanoTime() - start;
+    }
+
+    long getLoadedCount() {
+        return loadedCount;
+    }
+
+    long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    ArrayList<String> getErrors() {
+        return errors;
+    }
+
+    long getElapsedMillis() {
+        return (elapsedNanos > 0 ? elapsedNanos : System.nanoTime() - start) / 1000000;
+    }
+
+    double getRowsPerSecond() {
+        long nanos = elapsedNanos > 0 ? elapsedNanos : System.nanoTime() - start;
+        return nanos == 0 ? 0 : loadedCount * 1e9 / nanos;
+    }
+}
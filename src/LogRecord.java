@@ -0,0 +1,148 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+class LogRecord {
+    static final byte CREATE = 1;
+    static final byte DELETE = 2;
+    // carries the whole record like CREATE; replay updates the record with its key, or recreates it when missing
+    static final byte UPSERT = 3;
+    // the changes of a committed transaction, in one record so that replay finds all of them or none
+    static final byte COMMIT = 4;
+    // a whole page as it was after a change, which recovery writes back when the page on disk is torn
+    static final byte PAGE_IMAGE = 5;
+    private byte operation;
+    private String typeName;
+    private String key;
+    private HashMap<String, String> values;
+    private ArrayList<LogRecord> changes;
+    private int pageId;
+    private byte[] image;
+
+    private LogRecord(byte operation, String typeName, String key, HashMap<String, String> values) {
+        this.operation = operation;
+        this.typeName = typeName;
+        this.key = key;
+        this.values = values;
+    }
+
+    static LogRecord create(String typeName, HashMap<String, String> values) {
+        return new LogRecord(CREATE, typeName, null, values);
+    }
+
+    static LogRecord upsert(String typeName, HashMap<String, String> values) {
+        return new LogRecord(UPSERT, typeName, null, values);
+    }
+
+    static LogRecord delete(String typeName, String key) {
+        return new LogRecord(DELETE, typeName, key, null);
+    }
+
+    // creates, upserts and deletes, replayed in order
+    static LogRecord commit(ArrayList<LogRecord> changes) {
+        LogRecord record = new LogRecord(COMMIT, "", null, null);
+        record.changes = changes;
+        return record;
+    }
+
+    static LogRecord pageImage(String typeName, int pageId, byte[] image) {
+        LogRecord record = new LogRecord(PAGE_IMAGE, typeName, null, null);
+        record.pageId = pageId;
+        record.image = image;
+        return record;
+    }
+
+    static LogRecord createFromSerialized(byte[] serialized) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(serialized));
+        byte operation = in.readByte();
+        String typeName = in.readUTF();
+
+        switch (operation) {
+            case CREATE:
+            case UPSERT:
+                HashMap<String, String> values = new HashMap<>();
+                int count = in.readByte();
+                for (int i = 0; i < count; i++) {
+                    values.put(in.readUTF(), in.readUTF());
+                }
+                return new LogRecord(operation, typeName, null, values);
+            case DELETE:
+                return delete(typeName, in.readUTF());
+            case COMMIT:
+                ArrayList<LogRecord> changes = new ArrayList<>();
+                int changeCount = in.readInt();
+                for (int i = 0; i < changeCount; i++) {
+                    byte[] change = new byte[in.readInt()];
+                    in.readFully(change);
+                    changes.add(createFromSerialized(change));
+                }
+                return commit(changes);
+            case PAGE_IMAGE:
+                int pageId = in.readInt();
+                byte[] image = new byte[in.readInt()];
+                in.readFully(image);
+                return pageImage(typeName, pageId, image);
+            default:
+                throw new IOException(String.format("Unknown log operation %d", operation));
+        }
+    }
+
+    byte[] serialize() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(operation);
+        out.writeUTF(typeName);
+
+        if (operation == CREATE || operation == UPSERT) {
+            out.writeByte(values.size());
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+        } else if (operation == COMMIT) {
+            out.writeInt(changes.size());
+            for (LogRecord change : changes) {
+                byte[] serialized = change.serialize();
+                out.writeInt(serialized.length);
+                out.write(serialized);
+            }
+        } else if (operation == PAGE_IMAGE) {
+            out.writeInt(pageId);
+            out.writeInt(image.length);
+            out.write(image);
+        } else {
+            out.writeUTF(key);
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    byte getOperation() {
+        return operation;
+    }
+
+    String getTypeName() {
+        return typeName;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    HashMap<String, String> getValues() {
+        return values;
+    }
+
+    ArrayList<LogRecord> getChanges() {
+        return changes;
+    }
+
+    int getPageId() {
+        return pageId;
+    }
+
+    byte[] getImage() {
+        return image;
+    }
+}
@@ -1,9 +1,134 @@
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Messages go through a bounded queue to a background writer, so logging never waits on the console.
+// When the queue is full the message is dropped and counted instead. Formatting happens on the writer
+// thread, and only for enabled levels.
 public class Logger {
-    static void log(String message) {
-        System.out.println(message);
+    public enum Level {
+        TRACE, DEBUG, INFO, ERROR, OFF
+    }
+
+    static final int QUEUE_CAPACITY = 8192;
+    private static volatile Level level = Level.valueOf(System.getProperty("datenbank.log.level", "INFO").toUpperCase());
+    private static final ArrayBlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final AtomicLong enqueued = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+    // guards written, and is notified whenever the writer catches up
+    private static final Object progress = new Object();
+    private static long written;
+
+    static {
+        Thread writer = new Thread(Logger::write, "datenbank-logger");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Logger::flush));
+    }
+
+    public static void setLevel(Level level) {
+        Logger.level = level;
+    }
+
+    public static Level getLevel() {
+        return level;
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.compareTo(Logger.level) >= 0 && level != Level.OFF;
+    }
+
+    static void trace(String format, Object... args) {
+        log(Level.TRACE, format, args);
+    }
+
+    static void debug(String format, Object... args) {
+        log(Level.DEBUG, format, args);
+    }
+
+    static void info(String format, Object... args) {
+        log(Level.INFO, format, args);
     }
 
-    public static void logError(String message) {
-        System.out.println(String.format("ERROR: %s", message));
+    public static void error(String format, Object... args) {
+        log(Level.ERROR, format, args);
+    }
+
+    private static void log(Level level, String format, Object... args) {
+        if (!isEnabled(level)) return;
+
+        if (queue.offer(new Entry(level, format, args))) {
+            enqueued.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    public static long getDroppedCount() {
+        return dropped.get();
+    }
+
+    // waits until everything logged before the call has been written
+    public static void flush() {
+        long target = enqueued.get();
+        synchronized (progress) {
+            while (written < target) {
+                try {
+                    progress.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void write() {
+        ArrayList<Entry> batch = new ArrayList<>();
+        long reportedDrops = 0;
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+
+            StringBuilder output = new StringBuilder();
+            long drops = dropped.get();
+            if (drops > reportedDrops) {
+                output.append(String.format("WARNING: %d log messages dropped%n", drops - reportedDrops));
+                reportedDrops = drops;
+            }
+            for (Entry entry : batch) {
+                output.append(entry.format()).append(System.lineSeparator());
+            }
+            System.out.print(output);
+            System.out.flush();
+
+            synchronized (progress) {
+                written += batch.size();
+                progress.notifyAll();
+            }
+            batch.clear();
+        }
+    }
+
+    private static class Entry {
+        private final Level level;
+        private final String format;
+        private final Object[] args;
+
+        private Entry(Level level, String format, Object[] args) {
+            this.level = level;
+            this.format = format;
+            this.args = args;
+        }
+
+        String format() {
+            // without arguments the message is used as is, so a '%' in it is not a format specifier
+            String message = args.length == 0 ? format : String.format(format, args);
+            return level == Level.INFO ? message : String.format("%s: %s", level, message);
+        }
     }
 }
@@ -1,13 +1,58 @@
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
 
 public class Main {
     private static Database db;
 
+    // with "server [port]" the database is served over TCP until the process is stopped, with
+    // "load <type> <csv file>" the file is loaded into the type, otherwise the CLI runs
     public static void main(String[] args) throws IOException, InvalidTypeException, InvalidPageException, InvalidRecordException {
         db = new Database("Datenbank");
+        if (args.length > 0 && args[0].equals("server")) {
+            serve(args.length > 1 ? Integer.parseInt(args[1]) : DatabaseServer.DEFAULT_PORT);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("load")) {
+            load(args);
+            return;
+        }
+
         DatabaseCLI cli = new DatabaseCLI(db);
         cli.listen();
+        db.close();
+        Logger.flush();
+    }
+
+    private static void load(String[] args) throws IOException, InvalidPageException, InvalidRecordException {
+        if (args.length != 3 || db.getType(args[1]) == null) {
+            System.out.println(args.length == 3 ? String.format("No such type '%s'", args[1]) : "Usage: load <type> <csv file>");
+        } else {
+            LoadResult result = db.bulkLoad(args[1], Paths.get(args[2]));
+            Logger.flush();
+            for (String error : result.getErrors()) {
+                System.out.println(error);
+            }
+            System.out.println(String.format("Loaded %d rows, rejected %d, in %d ms (%.0f rows/s)",
+                    result.getLoadedCount(), result.getRejectedCount(), result.getElapsedMillis(), result.getRowsPerSecond()));
+        }
+        db.close();
+        Logger.flush();
+    }
+
+    private static void serve(int port) throws IOException {
+        DatabaseServer server = new DatabaseServer(db, port);
+        // the accepting thread keeps the process alive until it is stopped
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+                db.close();
+            } catch (IOException e) {
+                Logger.error("Cannot shut down cleanly: %s", e.getMessage());
+            }
+            Logger.flush();
+        }));
+        server.start();
     }
 }
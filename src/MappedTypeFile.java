@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+class MappedTypeFile extends TypeFile {
+    static final int CHUNK_PAGES = 256;
+    // each chunk maps CHUNK_PAGES pages, so a single page never straddles two mappings
+    private ArrayList<MappedByteBuffer> chunks;
+    private int pageCount;
+
+    MappedTypeFile(String filename, int pageSize, int fieldCount) throws IOException {
+        super(filename, pageSize, fieldCount);
+        chunks = new ArrayList<>();
+
+        int filePages = super.getPageCount();
+        while (chunks.size() * CHUNK_PAGES < filePages) {
+            mapChunk();
+        }
+        pageCount = findLastWrittenPage(filePages);
+    }
+
+    private synchronized void mapChunk() throws IOException {
+        long chunkSize = (long) CHUNK_PAGES * getPageSize();
+        long position = getOffset(chunks.size() * CHUNK_PAGES + 1);
+        chunks.add(getChannel().map(FileChannel.MapMode.READ_WRITE, position, chunkSize));
+    }
+
+    private int findLastWrittenPage(int filePages) {
+        // pages past the last written one are zero filled growth of the final chunk
+        for (int id = filePages; id > 0; id--) {
+            if (slice(id).getInt() != 0) return id;
+        }
+        return 0;
+    }
+
+    private ByteBuffer slice(int id) {
+        int index = id - 1;
+        MappedByteBuffer chunk = chunks.get(index / CHUNK_PAGES);
+        return chunk.slice((index % CHUNK_PAGES) * getPageSize(), getPageSize());
+    }
+
+    @Override
+    synchronized int getPageCount() {
+        return pageCount;
+    }
+
+    @Override
+    synchronized ByteBuffer readPage(int id) {
+        if (id < 1 || id > pageCount) return null;
+        return slice(id);
+    }
+
+    @Override
+    synchronized ByteBuffer getPageBuffer(int id) throws IOException {
+        while (chunks.size() * CHUNK_PAGES < id) {
+            mapChunk();
+        }
+        return slice(id);
+    }
+
+    @Override
+    synchronized void writePage(int id, ByteBuffer page) {
+        // the page was encoded straight into the mapping by getPageBuffer
+        if (id > pageCount) pageCount = id;
+    }
+
+    // The file always ends with a whole chunk, so only chunks without a kept page are cut off. The dropped
+    // pages in the last kept chunk are zeroed instead, which is what findLastWrittenPage looks for on the
+    // next open. A mapping cannot be released explicitly before Java 22; the cut chunks are never touched
+    // again and are unmapped when their buffers are collected.
+    @Override
+    synchronized void truncate(int pageCount) throws IOException {
+        byte[] zeros = new byte[getPageSize()];
+        int keptChunks = (pageCount + CHUNK_PAGES - 1) / CHUNK_PAGES;
+        for (int id = pageCount + 1; id <= Math.min(this.pageCount, keptChunks * CHUNK_PAGES); id++) {
+            slice(id).put(zeros);
+        }
+        while (chunks.size() > keptChunks) {
+            chunks.remove(chunks.size() - 1);
+        }
+        getChannel().truncate(getOffset(keptChunks * CHUNK_PAGES + 1));
+        this.pageCount = Math.min(this.pageCount, pageCount);
+    }
+
+    @Override
+    synchronized void force() {
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+    }
+
+    @Override
+    synchronized void close() throws IOException {
+        force();
+        chunks.clear();
+        super.close();
+    }
+}
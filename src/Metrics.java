@@ -0,0 +1,84 @@
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Counters, latency histograms and gauges of one database, registered on first use by name.
+// A snapshot flattens them into one sorted map, which is also what the JMX bean exposes.
+class Metrics {
+    private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    void increment(String name) {
+        add(name, 1);
+    }
+
+    void add(String name, long amount) {
+        counters.computeIfAbsent(name, n -> new LongAdder()).add(amount);
+    }
+
+    // records the time since start, taken from System.nanoTime()
+    void record(String name, long start) {
+        histograms.computeIfAbsent(name, n -> new Histogram()).record(System.nanoTime() - start);
+    }
+
+    void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    // histograms appear as <name>.count plus mean, p50, p99 and max latencies in microseconds
+    TreeMap<String, Long> snapshot() {
+        TreeMap<String, Long> snapshot = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+            snapshot.put(counter.getKey(), counter.getValue().sum());
+        }
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            snapshot.put(gauge.getKey(), gauge.getValue().getAsLong());
+        }
+        for (Map.Entry<String, Histogram> histogram : histograms.entrySet()) {
+            histogram.getValue().addTo(snapshot, histogram.getKey());
+        }
+        return snapshot;
+    }
+
+    static class Histogram {
+        // bucket i counts latencies in [2^(i-1), 2^i) nanoseconds, bucket 0 the zero latencies
+        private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(Math.max(nanos, 0)));
+            count.increment();
+            sum.add(nanos);
+            max.accumulateAndGet(nanos, Math::max);
+        }
+
+        // the upper bound of the bucket holding the given fraction of the samples
+        long getPercentile(double fraction) {
+            long total = count.sum();
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (total > 0 && seen >= Math.ceil(total * fraction)) {
+                    return Math.min(i == 0 ? 0 : 1L << Math.min(i, 62), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        void addTo(Map<String, Long> snapshot, String name) {
+            long samples = count.sum();
+            snapshot.put(name + ".count", samples);
+            snapshot.put(name + ".meanMicros", samples == 0 ? 0 : sum.sum() / samples / 1000);
+            snapshot.put(name + ".p50Micros", getPercentile(0.5) / 1000);
+            snapshot.put(name + ".p99Micros", getPercentile(0.99) / 1000);
+            snapshot.put(name + ".maxMicros", max.get() / 1000);
+        }
+    }
+}
@@ -1,32 +1,107 @@
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.zip.CRC32;
 
 class Page {
     private static final int MAX_RECORD_COUNT = 20;
+    // id, capacity, used count, checksum
+    private static final int HEADER_SIZE = Integer.BYTES + 2 * Short.BYTES + Integer.BYTES;
+    private static final Pattern SERIALIZED_PATTERN = Pattern.compile(
+            "^(\\d+\\s*),(\\d+\\s*),(\\d+\\s*)" // header
+                    + "!" // records separator
+                    + "(.*)$"); // records
     private int id;
-    private ArrayList<Record> records;
+    private Record[] slots;
+    private int used;
+    private boolean dirty;
+    // last log record applied to this page, which must be durable before the page is written
+    private long lsn;
+    // log epoch in which the whole page was last logged, see Type.logPageImage
+    private long imageEpoch = -1;
 
     Page(int id) {
         this.id = id;
-        this.records = new ArrayList<>();
+        this.slots = new Record[MAX_RECORD_COUNT];
     }
 
     private Page(int id, ArrayList<Record> records) {
-        this.id = id;
-        this.records = records;
+        this(id);
+        for (Record record : records) {
+            addRecord(record);
+        }
+        dirty = false;
     }
 
-    static Page createFromSerialized(Type type, String serialized) throws InvalidPageException {
-        String regex = "^(\\d+\\s*),(\\d+\\s*),(\\d+\\s*)" // header
-                + "!" // records separator
-                + "(.*)$"; // records
+    static int getEncodedLength(Type type) {
+        return HEADER_SIZE + MAX_RECORD_COUNT * Record.getEncodedLength(type);
+    }
 
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(serialized.trim());
+    static Page createFromBuffer(Type type, ByteBuffer buffer) throws InvalidPageException {
+        int start = buffer.position();
+        int id = buffer.getInt();
+        int capacity = buffer.getShort();
+        int usedCount = buffer.getShort();
+        int checksum = buffer.getInt();
+        // a slot that was never written is all zeros
+        if (id == 0) return null;
+
+        if (capacity != MAX_RECORD_COUNT) {
+            throw new InvalidPageException(String.format("Page #%d has capacity %d, expected %d", id, capacity, MAX_RECORD_COUNT));
+        }
+
+        ByteBuffer body = buffer.slice();
+        body.limit(MAX_RECORD_COUNT * Record.getEncodedLength(type));
+        if (computeChecksum(body.duplicate()) != checksum) {
+            throw new InvalidPageException(String.format("Page #%d failed checksum verification", id));
+        }
+
+        Page page = new Page(id);
+        for (int slot = 0; slot < MAX_RECORD_COUNT; slot++) {
+            page.slots[slot] = Record.createFromBuffer(type, body);
+            if (page.slots[slot] != null) page.used++;
+        }
+        if (page.used != usedCount) {
+            throw new InvalidPageException(String.format("Page #%d has %d records, header says %d", id, page.used, usedCount));
+        }
+
+        buffer.position(start + getEncodedLength(type));
+        return page;
+    }
+
+    void writeTo(Type type, ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.position(start + HEADER_SIZE);
+        ByteBuffer body = buffer.slice();
+        for (Record record : slots) {
+            if (record == null) {
+                Record.writeEmptyTo(type, body);
+            } else {
+                record.writeTo(body);
+            }
+        }
+        body.flip();
+
+        buffer.position(start);
+        buffer.putInt(id);
+        buffer.putShort((short) getSize());
+        buffer.putShort((short) getUsedCount());
+        buffer.putInt(computeChecksum(body));
+        buffer.position(start + getEncodedLength(type));
+    }
+
+    private static int computeChecksum(ByteBuffer body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    static Page createFromSerialized(Type type, String serialized) throws InvalidPageException {
+        Matcher matcher = SERIALIZED_PATTERN.matcher(serialized.trim());
         if (!matcher.matches()) {
             throw new InvalidPageException("Page does not have proper encoding");
         }
@@ -51,65 +126,91 @@ class Page {
         return new Page(id, records);
     }
 
-    void addRecord(Record record) {
+    int addRecord(Record record) {
         if (!hasSpace()) {
-            Logger.log(String.format("Page '%d' is full", id));
-            return;
+            Logger.trace("Page '%d' is full", id);
+            return -1;
         }
-        records.add(record);
-    }
-
-    void deleteRecord(Record record) {
-        records.removeIf(r -> r.isKey(record.getKeyValue()));
+        for (int slot = 0; slot < slots.length; slot++) {
+            if (slots[slot] != null) continue;
+            slots[slot] = record;
+            used++;
+            dirty = true;
+            return slot;
+        }
+        return -1;
     }
 
-    Record getRecord(String key) {
-        for (Record record : records) {
-            if (record.isKey(key)) return record;
-        }
-        return null;
+    void deleteRecord(int slot) {
+        if (slots[slot] == null) return;
+        slots[slot] = null;
+        used--;
+        dirty = true;
     }
 
-    boolean hasSpace() {
-        return records.size() < MAX_RECORD_COUNT;
+    // replaces the record in a used slot
+    void setRecord(int slot, Record record) {
+        slots[slot] = record;
+        dirty = true;
     }
 
-    String serialize() {
-        return String.format("%s!%s",
-                serializeHeader(),
-                serializeRecords());
+    Record getRecord(int slot) {
+        return slots[slot];
     }
 
-    private String serializeRecords() {
-        return getRecords().stream()
-                .map(Record::serialize)
-                .collect(Collectors.joining("|"));
+    boolean hasSpace() {
+        return used < MAX_RECORD_COUNT;
     }
 
-    private String serializeHeader() {
-        return String.format("%-4d,%-2d,%-2d",
-                id,
-                getSize(),
-                getUsedSize());
+    int getUsedCount() {
+        return used;
     }
 
-    private int getUsedSize() {
-        return records.size();
+    int getSize() {
+        return MAX_RECORD_COUNT;
     }
 
-    private int getSize() {
+    static int getCapacity() {
         return MAX_RECORD_COUNT;
     }
 
     ArrayList<Record> getRecords() {
+        ArrayList<Record> records = new ArrayList<>();
+        for (Record record : slots) {
+            if (record != null) records.add(record);
+        }
         return records;
     }
 
     boolean isEmpty() {
-        return records.size() == 0;
+        return used == 0;
     }
 
     int getId() {
         return id;
     }
+
+    boolean isDirty() {
+        return dirty;
+    }
+
+    void markClean() {
+        dirty = false;
+    }
+
+    long getLsn() {
+        return lsn;
+    }
+
+    void setLsn(long lsn) {
+        this.lsn = lsn;
+    }
+
+    long getImageEpoch() {
+        return imageEpoch;
+    }
+
+    void setImageEpoch(long imageEpoch) {
+        this.imageEpoch = imageEpoch;
+    }
 }
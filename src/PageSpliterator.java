@@ -0,0 +1,64 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+class PageSpliterator implements Spliterator<Record> {
+    private Type type;
+    // page ids in [nextPageId, endPageId) are still to be read
+    private int nextPageId;
+    private int endPageId;
+    private ArrayList<Record> current;
+    private int index;
+
+    PageSpliterator(Type type, int firstPageId, int endPageId) {
+        this.type = type;
+        this.nextPageId = firstPageId;
+        this.endPageId = endPageId;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Record> action) {
+        while (current == null || index >= current.size()) {
+            if (nextPageId >= endPageId) return false;
+            current = readPage(nextPageId++);
+            index = 0;
+        }
+        action.accept(current.get(index++));
+        return true;
+    }
+
+    private ArrayList<Record> readPage(int id) {
+        try {
+            return type.scanPage(id);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InvalidPageException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public Spliterator<Record> trySplit() {
+        int remaining = endPageId - nextPageId;
+        if (remaining < 2) return null;
+
+        // the prefix keeps any records already read from the current page
+        int middle = nextPageId + remaining / 2;
+        PageSpliterator suffix = new PageSpliterator(type, middle, endPageId);
+        endPageId = middle;
+        return suffix;
+    }
+
+    @Override
+    public long estimateSize() {
+        long buffered = current == null ? 0 : current.size() - index;
+        return buffered + (long) (endPageId - nextPageId) * Page.getCapacity();
+    }
+
+    @Override
+    public int characteristics() {
+        return NONNULL | DISTINCT;
+    }
+}
@@ -0,0 +1,99 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Every message is a frame: an int body length, then the body. A request body starts with the operation
+// and a response body with the status, followed by DataOutput encoded arguments or results. Responses
+// come back in request order, so a client can send many requests before reading any of the responses.
+class Protocol {
+    static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    static final byte CREATE_TYPE = 1;
+    static final byte DELETE_TYPE = 2;
+    static final byte CREATE_RECORD = 3;
+    static final byte DELETE_RECORD = 4;
+    static final byte GET_RECORD = 5;
+    static final byte GET_RECORDS = 6;
+    static final byte FIND_RECORDS = 7;
+    static final byte RANGE_SCAN = 8;
+    static final byte QUERY = 9;
+    static final byte CREATE_INDEX = 10;
+    static final byte COMPACT = 11;
+    static final byte CHECKPOINT = 12;
+    static final byte UPDATE_RECORD = 13;
+
+    static final byte OK = 0;
+    static final byte NOT_FOUND = 1;
+    // followed by the error message
+    static final byte ERROR = 2;
+
+    // returns null when the stream ends between frames
+    static byte[] readFrame(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < 0 || length > MAX_FRAME_LENGTH) {
+            throw new IOException(String.format("Invalid frame length %d", length));
+        }
+
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return body;
+    }
+
+    static void writeFrame(DataOutputStream out, ByteArrayOutputStream body) throws IOException {
+        out.writeInt(body.size());
+        body.writeTo(out);
+    }
+
+    static void writeNullableString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    static String readNullableString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    static void writeStrings(DataOutput out, List<String> values) throws IOException {
+        out.writeShort(values.size());
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+    }
+
+    static String[] readStrings(DataInput in) throws IOException {
+        String[] values = new String[in.readUnsignedShort()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readUTF();
+        }
+        return values;
+    }
+
+    static void writeValues(DataOutput out, Map<String, String> values) throws IOException {
+        out.writeShort(values.size());
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+    }
+
+    static HashMap<String, String> readValues(DataInput in) throws IOException {
+        int count = in.readUnsignedShort();
+        HashMap<String, String> values = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            values.put(in.readUTF(), in.readUTF());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,126 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// Built with Database.query(typeName), e.g. query("car").where("color", "=", "red").select("id", "make").limit(10).
+// Rows come back as the selected values in select order, or every field when nothing was selected.
+public class Query {
+    public enum Operator {
+        EQ("="), NE("!="), LT("<"), LE("<="), GT(">"), GE(">=");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        static Operator fromSymbol(String symbol) {
+            for (Operator operator : values()) {
+                if (operator.symbol.equals(symbol)) return operator;
+            }
+            throw new IllegalArgumentException(String.format("Unknown operator '%s'", symbol));
+        }
+
+        // values compare as strings, the same order the key tree uses
+        boolean test(String actual, String expected) {
+            int comparison = actual.compareTo(expected);
+            switch (this) {
+                case EQ: return comparison == 0;
+                case NE: return comparison != 0;
+                case LT: return comparison < 0;
+                case LE: return comparison <= 0;
+                case GT: return comparison > 0;
+                default: return comparison >= 0;
+            }
+        }
+    }
+
+    static class Condition {
+        private String field;
+        private Operator operator;
+        private String value;
+        // -1 when the type has no such field
+        private int fieldIndex;
+
+        private Condition(String field, int fieldIndex, Operator operator, String value) {
+            this.field = field;
+            this.fieldIndex = fieldIndex;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        boolean test(Record record) {
+            return operator.test(record.getValue(fieldIndex), value);
+        }
+
+        String getField() {
+            return field;
+        }
+
+        Operator getOperator() {
+            return operator;
+        }
+
+        String getValue() {
+            return value;
+        }
+
+        int getFieldIndex() {
+            return fieldIndex;
+        }
+    }
+
+    private Type type;
+    private Metrics metrics;
+    private ArrayList<Condition> conditions;
+    private ArrayList<String> columns;
+    private int limit;
+
+    Query(Type type, Metrics metrics) {
+        this.type = type;
+        this.metrics = metrics;
+        this.conditions = new ArrayList<>();
+        this.columns = new ArrayList<>(type.getFields());
+    }
+
+    public Query where(String field, String operator, String value) {
+        return where(field, Operator.fromSymbol(operator), value);
+    }
+
+    public Query where(String field, Operator operator, String value) {
+        conditions.add(new Condition(field, type.getFieldIndex(field), operator, value));
+        return this;
+    }
+
+    public Query select(String... fields) {
+        columns = new ArrayList<>(Arrays.asList(fields));
+        return this;
+    }
+
+    // 0 means no limit
+    public Query limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    public ArrayList<String[]> execute() throws IOException, InvalidPageException, InvalidTypeException {
+        long start = System.nanoTime();
+        try {
+            return type.query(this);
+        } finally {
+            metrics.record("database.query", start);
+        }
+    }
+
+    public ArrayList<String> getColumns() {
+        return columns;
+    }
+
+    ArrayList<Condition> getConditions() {
+        return conditions;
+    }
+
+    int getLimit() {
+        return limit;
+    }
+}
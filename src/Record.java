@@ -1,94 +1,132 @@
+import java.nio.ByteBuffer;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 class Record {
-    private static final int MAX_FIELD_VALUE_LENGTH = 10;
+    static final int MAX_FIELD_VALUE_LENGTH = 10;
+    private static final byte SLOT_FREE = 0;
+    private static final byte SLOT_USED = 1;
+    private static final Pattern SERIALIZED_PATTERN = Pattern.compile("^(\\d+)\\s*,(\\d*)\\s*:(.*)$");
     private Type type;
-    private HashMap<String, String> values;
+    // one value per field in the type's field order, null for a field that was never given
+    private String[] values;
 
-    Record(Type type, HashMap<String, String> fieldValues) throws InvalidRecordException {
+    Record(Type type, Map<String, String> fieldValues) throws InvalidRecordException {
+        if (fieldValuesTooLong(fieldValues.values().toArray(new String[0]))) {
+            throw new InvalidRecordException("Record values exceed maximum length");
+        }
         this.type = type;
-        if (fieldValuesTooLong(fieldValues)) {
+        this.values = new String[type.getFieldCount()];
+        for (Map.Entry<String, String> entry : fieldValues.entrySet()) {
+            int index = type.getFieldIndex(entry.getKey());
+            if (index >= 0) values[index] = entry.getValue();
+        }
+    }
+
+    Record(Type type, String[] values) throws InvalidRecordException {
+        if (values.length != type.getFieldCount()) {
+            throw new InvalidRecordException(String.format("Expected %d values, got %d", type.getFieldCount(), values.length));
+        }
+        if (fieldValuesTooLong(values)) {
             throw new InvalidRecordException("Record values exceed maximum length");
         }
-        this.values = fieldValues;
+        this.type = type;
+        this.values = values;
+    }
+
+    private Record() {
     }
 
-    private boolean fieldValuesTooLong(HashMap<String, String> fieldValues) {
-        for (String val : fieldValues.values()) {
-            if (val.length() > MAX_FIELD_VALUE_LENGTH) return true;
+    private boolean fieldValuesTooLong(String[] fieldValues) {
+        for (String val : fieldValues) {
+            if (val != null && val.length() > MAX_FIELD_VALUE_LENGTH) return true;
         }
         return false;
     }
 
+    static int getEncodedLength(Type type) {
+        // slot flag, then one fixed width value per field
+        return 1 + type.getFields().size() * StringCodec.getEncodedLength(MAX_FIELD_VALUE_LENGTH);
+    }
+
+    static Record createFromBuffer(Type type, ByteBuffer buffer) {
+        if (buffer.get() == SLOT_FREE) {
+            buffer.position(buffer.position() + getEncodedLength(type) - 1);
+            return null;
+        }
+
+        String[] values = new String[type.getFieldCount()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = StringCodec.get(buffer, MAX_FIELD_VALUE_LENGTH);
+        }
+
+        Record record = new Record();
+        record.type = type;
+        record.values = values;
+        return record;
+    }
+
+    void writeTo(ByteBuffer buffer) {
+        buffer.put(SLOT_USED);
+        for (int i = 0; i < values.length; i++) {
+            StringCodec.put(buffer, getValue(i), MAX_FIELD_VALUE_LENGTH);
+        }
+    }
+
+    static void writeEmptyTo(Type type, ByteBuffer buffer) {
+        int length = getEncodedLength(type);
+        for (int i = 0; i < length; i++) {
+            buffer.put(SLOT_FREE);
+        }
+    }
+
     static Record createFromSerialized(Type type, String serialized) throws InvalidRecordException {
-        String regex = "^(\\d+)\\s*,(\\d*)\\s*:(.*)$";
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(serialized);
+        Matcher matcher = SERIALIZED_PATTERN.matcher(serialized);
         if (!matcher.matches()) {
             throw new InvalidRecordException("Record does not have proper encoding");
         }
 
-        int fieldCount = Integer.valueOf(matcher.group(1).trim());
-        int valueSize = Integer.valueOf(matcher.group(2).trim());
-        String[] rawValues = matcher.group(3).trim().split(",");
+        // trim leaves a trailing comma when the last value is empty, and that value must not be dropped
+        String[] rawValues = matcher.group(3).trim().split(",", -1);
 
         if (rawValues.length != type.getFields().size()) {
             throw new InvalidRecordException("Record does not have proper encoding");
         }
 
-        HashMap<String, String> values = new HashMap<>();
-        for (int i = 0; i < type.getFields().size(); i++) {
-            String field = type.getFields().get(i);
-            values.put(field, rawValues[i].trim());
+        String[] values = new String[rawValues.length];
+        for (int i = 0; i < rawValues.length; i++) {
+            values[i] = rawValues[i].trim();
         }
 
         return new Record(type, values);
     }
 
-    String serialize() {
-        return String.format("%s:%s",
-                serializeHeader(),
-                serializeFields()
-        );
-    }
-
-    private String serializeHeader() {
-        // header format: # of fields, size
-        return String.format("%-2d,%-2d",
-                getValueCount(),
-                getValueSize()
-        );
+    boolean isKey(String key) {
+        return key.equals(getKeyValue());
     }
 
-    private int getValueCount() {
-        return values.values().size();
+    String getKeyValue() {
+        return values[type.getKeyFieldIndex()];
     }
 
-    private int getValueSize() {
-        return serializeFields().length();
+    String getValue(int index) {
+        String value = values[index];
+        return value == null ? "" : value;
     }
 
-    private String serializeFields() {
-        StringBuilder out = new StringBuilder();
-        for (String field : type.getFields()) {
-            out.append(StringPadder.padRight(getValueOf(field), MAX_FIELD_VALUE_LENGTH)).append(",");
+    // field name to value, leaving out fields that were never given
+    HashMap<String, String> getFieldValues() {
+        HashMap<String, String> fieldValues = new HashMap<>();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) fieldValues.put(type.getFields().get(i), values[i]);
         }
-        // remove last comma
-        return out.substring(0, out.length() - 1);
-    }
-
-    boolean isKey(String key) {
-        return values.get(type.getKeyField()).equals(key);
-    }
-
-    String getKeyValue() {
-        return values.get(type.getKeyField());
+        return fieldValues;
     }
 
     String getValueOf(String key) {
-        return values.getOrDefault(key, "");
+        int index = type.getFieldIndex(key);
+        return index < 0 ? "" : getValue(index);
     }
 }
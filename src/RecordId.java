@@ -0,0 +1,17 @@
+class RecordId {
+    private final int pageId;
+    private final int slot;
+
+    RecordId(int pageId, int slot) {
+        this.pageId = pageId;
+        this.slot = slot;
+    }
+
+    int getPageId() {
+        return pageId;
+    }
+
+    int getSlot() {
+        return slot;
+    }
+}
@@ -0,0 +1,231 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+// Maps the values of a non-key field to the keys of the records holding them. The file is a journal of
+// additions and removals that load replays: a save appends only the changes since the last one, and
+// writes the current entries to a new file once the journal has grown to REWRITE_FACTOR times their number.
+class SecondaryIndex {
+    private static final int MAGIC = 0x44544e49;
+    private static final int VERSION = 2;
+    // magic, version, clean flag, journal entry count
+    private static final int HEADER_SIZE = 4 * Integer.BYTES;
+    private static final int CLEAN_FLAG_OFFSET = 2 * Integer.BYTES;
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    // operation, value, key
+    static final int ENTRY_LENGTH = 1 + 2 * StringCodec.getEncodedLength(Record.MAX_FIELD_VALUE_LENGTH);
+    static final int REWRITE_FACTOR = 4;
+    // a small index is not rewritten for a handful of changes
+    private static final int MIN_REWRITE_LENGTH = 1024;
+    private String filename;
+    private int fieldIndex;
+    // field value to the keys of the records holding it
+    private HashMap<String, HashSet<String>> keysByValue;
+    private int size;
+    // entries in the file, and the changes not appended to it yet
+    private int journalLength;
+    private ArrayList<Change> changes;
+    // set until the file holds the index at all
+    private boolean rewrite;
+    // whether the file on disk is known to match the map; cleared on disk before the first change after a save
+    private boolean clean;
+
+    SecondaryIndex(String filename, int fieldIndex) {
+        this.filename = filename;
+        this.fieldIndex = fieldIndex;
+        this.keysByValue = new HashMap<>();
+        this.changes = new ArrayList<>();
+        this.rewrite = true;
+    }
+
+    // returns null when the index is missing, unreadable or was not saved after its last change,
+    // so the caller can rebuild it
+    static SecondaryIndex load(String filename, int fieldIndex) throws IOException {
+        ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.wrap(Files.readAllBytes(Paths.get(filename)));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        if (buffer.remaining() < HEADER_SIZE
+                || buffer.getInt() != MAGIC
+                || buffer.getInt() != VERSION
+                || buffer.getInt() != 1) {
+            return null;
+        }
+        int journalLength = buffer.getInt();
+        if (buffer.remaining() != (long) journalLength * ENTRY_LENGTH) return null;
+
+        SecondaryIndex index = new SecondaryIndex(filename, fieldIndex);
+        for (int i = 0; i < journalLength; i++) {
+            byte operation = buffer.get();
+            String value = StringCodec.get(buffer, Record.MAX_FIELD_VALUE_LENGTH);
+            String key = StringCodec.get(buffer, Record.MAX_FIELD_VALUE_LENGTH);
+            if (operation == ADD) {
+                index.put(value, key);
+            } else if (operation == REMOVE) {
+                index.delete(value, key);
+            } else {
+                return null;
+            }
+        }
+        index.journalLength = journalLength;
+        index.rewrite = false;
+        index.clean = true;
+        return index;
+    }
+
+    void save() throws IOException {
+        if (changes.isEmpty() && !rewrite) return;
+
+        if (rewrite || journalLength + changes.size() > REWRITE_FACTOR * Math.max(size, MIN_REWRITE_LENGTH)) {
+            rewriteFile();
+        } else {
+            appendChanges();
+        }
+        changes.clear();
+        rewrite = false;
+        clean = true;
+    }
+
+    // the entries go to a temporary file moved over the old one, so a crash leaves one or the other
+    private void rewriteFile() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + size * ENTRY_LENGTH);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(1).putInt(size);
+        for (Map.Entry<String, HashSet<String>> entry : keysByValue.entrySet()) {
+            for (String key : entry.getValue()) {
+                putEntry(buffer, ADD, entry.getKey(), key);
+            }
+        }
+        buffer.flip();
+
+        Path path = Paths.get(filename);
+        Path temporary = Paths.get(filename + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        journalLength = size;
+    }
+
+    // the file stays marked unclean until the appended entries are durable and counted in the header
+    private void appendChanges() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(changes.size() * ENTRY_LENGTH);
+        for (Change change : changes) {
+            putEntry(buffer, change.operation, change.value, change.key);
+        }
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.WRITE)) {
+            long position = HEADER_SIZE + (long) journalLength * ENTRY_LENGTH;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            channel.force(false);
+
+            ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES).putInt(1).putInt(journalLength + changes.size());
+            header.flip();
+            channel.write(header, CLEAN_FLAG_OFFSET);
+            channel.force(false);
+        }
+        journalLength += changes.size();
+    }
+
+    private static void putEntry(ByteBuffer buffer, byte operation, String value, String key) {
+        buffer.put(operation);
+        StringCodec.put(buffer, value, Record.MAX_FIELD_VALUE_LENGTH);
+        StringCodec.put(buffer, key, Record.MAX_FIELD_VALUE_LENGTH);
+    }
+
+    void add(Record record) throws IOException {
+        String value = record.getValue(fieldIndex);
+        String key = record.getKeyValue();
+        if (keysByValue.containsKey(value) && keysByValue.get(value).contains(key)) return;
+
+        markChanged();
+        put(value, key);
+        changes.add(new Change(ADD, value, key));
+    }
+
+    void remove(Record record) throws IOException {
+        String value = record.getValue(fieldIndex);
+        String key = record.getKeyValue();
+        HashSet<String> keys = keysByValue.get(value);
+        if (keys == null || !keys.contains(key)) return;
+
+        markChanged();
+        delete(value, key);
+        changes.add(new Change(REMOVE, value, key));
+    }
+
+    private void put(String value, String key) {
+        if (keysByValue.computeIfAbsent(value, v -> new HashSet<>()).add(key)) size++;
+    }
+
+    private void delete(String value, String key) {
+        HashSet<String> keys = keysByValue.get(value);
+        if (keys == null || !keys.remove(key)) return;
+
+        size--;
+        if (keys.isEmpty()) keysByValue.remove(value);
+    }
+
+    // a crash after this point leaves the file marked unclean, so the next open rebuilds it
+    // instead of trusting entries that miss changes already written to the type file
+    private void markChanged() throws IOException {
+        if (!clean) return;
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.WRITE)) {
+            ByteBuffer flag = ByteBuffer.allocate(Integer.BYTES).putInt(0);
+            flag.flip();
+            channel.write(flag, CLEAN_FLAG_OFFSET);
+            channel.force(false);
+        }
+        clean = false;
+    }
+
+    ArrayList<String> getKeys(String value) {
+        HashSet<String> keys = keysByValue.get(value);
+        return keys == null ? new ArrayList<>() : new ArrayList<>(keys);
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    int getFieldIndex() {
+        return fieldIndex;
+    }
+
+    String getFilename() {
+        return filename;
+    }
+
+    private static class Change {
+        private final byte operation;
+        private final String value;
+        private final String key;
+
+        Change(byte operation, String value, String key) {
+            this.operation = operation;
+            this.value = value;
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,6 @@
+public enum StorageMode {
+    // positional reads and writes through a FileChannel
+    STANDARD,
+    // type files are memory mapped and pages are read and written in place
+    MAPPED
+}
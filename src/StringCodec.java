@@ -0,0 +1,25 @@
+import java.nio.ByteBuffer;
+
+class StringCodec {
+    static int getEncodedLength(int maxLength) {
+        // one length byte followed by fixed width UTF-16 chars
+        return 1 + maxLength * Character.BYTES;
+    }
+
+    static void put(ByteBuffer buffer, String value, int maxLength) {
+        buffer.put((byte) value.length());
+        for (int i = 0; i < maxLength; i++) {
+            buffer.putChar(i < value.length() ? value.charAt(i) : 0);
+        }
+    }
+
+    static String get(ByteBuffer buffer, int maxLength) {
+        int length = buffer.get() & 0xFF;
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = buffer.getChar();
+        }
+        buffer.position(buffer.position() + (maxLength - length) * Character.BYTES);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,123 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// A unit of work over any number of types, started by Database.begin. Reads see the database as of begin,
+// along with the transaction's own changes, which nobody else sees before commit applies them all at once.
+// Of two transactions changing the same record, the one committing later fails with a
+// TransactionConflictException and changes nothing; it can be retried in a new transaction.
+// A transaction is not thread safe.
+public class Transaction implements AutoCloseable {
+    private Database db;
+    private TransactionManager transactions;
+    private long snapshot;
+    // by type and key, the record written or null for a delete
+    private LinkedHashMap<Type, LinkedHashMap<String, Record>> writes = new LinkedHashMap<>();
+    private boolean finished;
+
+    Transaction(Database db, TransactionManager transactions) {
+        this.db = db;
+        this.transactions = transactions;
+        this.snapshot = transactions.begin();
+    }
+
+    public Record getRecord(String typeName, String key) throws IOException, InvalidPageException {
+        checkNotFinished();
+        Type type = db.getType(typeName);
+        Map<String, Record> typeWrites = writes.get(type);
+        if (typeWrites != null && typeWrites.containsKey(key)) return typeWrites.get(key);
+        return type.getRecord(key, snapshot);
+    }
+
+    // never blocks writers for longer than a page takes to read, see Type.getRecords(long)
+    public ArrayList<Record> getRecordsByType(String typeName) throws IOException, InvalidPageException {
+        checkNotFinished();
+        Type type = db.getType(typeName);
+        ArrayList<Record> records = type.getRecords(snapshot);
+        Map<String, Record> typeWrites = writes.get(type);
+        if (typeWrites == null) return records;
+
+        records.removeIf(record -> typeWrites.containsKey(record.getKeyValue()));
+        for (Record record : typeWrites.values()) {
+            if (record != null) records.add(record);
+        }
+        return records;
+    }
+
+    // like Database.createRecord, a record whose key the transaction already sees is left as it is
+    public void createRecord(String typeName, HashMap<String, String> fieldValues) throws IOException, InvalidRecordException, InvalidPageException {
+        checkNotFinished();
+        Type type = db.getType(typeName);
+        type.getKey(fieldValues);
+        Record record = new Record(type, fieldValues);
+        if (getRecord(typeName, record.getKeyValue()) != null) {
+            Logger.info("Record with key '%s' already exists.", record.getKeyValue());
+            return;
+        }
+        writes.computeIfAbsent(type, t -> new LinkedHashMap<>()).put(record.getKeyValue(), record);
+    }
+
+    // like Database.updateRecord, changing the key moves the record and a missing record is left alone
+    public void updateRecord(String typeName, String key, Map<String, String> changes) throws IOException, InvalidRecordException, InvalidPageException {
+        checkNotFinished();
+        Record record = getRecord(typeName, key);
+        if (record == null) return;
+
+        Type type = db.getType(typeName);
+        Record updated = type.getUpdatedRecord(record, changes);
+        String newKey = updated.getKeyValue();
+        if (!newKey.equals(key) && getRecord(typeName, newKey) != null) {
+            throw new InvalidRecordException(String.format("Record with key '%s' already exists", newKey));
+        }
+        LinkedHashMap<String, Record> typeWrites = writes.computeIfAbsent(type, t -> new LinkedHashMap<>());
+        if (!newKey.equals(key)) typeWrites.put(key, null);
+        typeWrites.put(newKey, updated);
+    }
+
+    public void deleteRecord(String typeName, String key) throws IOException, InvalidPageException {
+        checkNotFinished();
+        if (getRecord(typeName, key) == null) return;
+
+        writes.computeIfAbsent(db.getType(typeName), t -> new LinkedHashMap<>()).put(key, null);
+    }
+
+    public void commit() throws IOException, InvalidPageException, TransactionConflictException {
+        checkNotFinished();
+        try {
+            if (!writes.isEmpty()) db.commit(this);
+        } finally {
+            finish();
+        }
+    }
+
+    public void rollback() {
+        checkNotFinished();
+        finish();
+    }
+
+    // rolls back a transaction that was neither committed nor rolled back
+    @Override
+    public void close() {
+        if (!finished) rollback();
+    }
+
+    long getSnapshot() {
+        return snapshot;
+    }
+
+    LinkedHashMap<Type, LinkedHashMap<String, Record>> getWrites() {
+        return writes;
+    }
+
+    private void finish() {
+        finished = true;
+        writes = new LinkedHashMap<>();
+        transactions.end(snapshot);
+    }
+
+    private void checkNotFinished() {
+        if (finished) throw new IllegalStateException("The transaction has already been committed or rolled back");
+    }
+}
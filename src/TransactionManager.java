@@ -0,0 +1,101 @@
+import java.util.Collection;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Hands out the timestamps of record changes and the snapshots of transactions. Every change takes the next
+// timestamp while it holds the write locks of its types, and a snapshot is the latest timestamp when its
+// transaction begins, so it sees exactly the changes stamped at or before it. The types keep the versions
+// that changes replaced while a transaction is open, and a background thread drops the ones that no open
+// snapshot can see any more.
+class TransactionManager {
+    static final long COLLECT_INTERVAL_MILLIS = 1000;
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger openCount = new AtomicInteger();
+    // snapshot to the number of open transactions reading it
+    private final TreeMap<Long, Integer> snapshots = new TreeMap<>();
+    private Metrics metrics;
+    private ScheduledExecutorService collector;
+
+    TransactionManager(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    long nextTimestamp() {
+        return clock.incrementAndGet();
+    }
+
+    // A change checks this after taking its timestamp and a transaction counts itself before reading the
+    // clock, so a change that finds no open transaction is stamped at or before any snapshot taken later.
+    boolean hasOpenTransactions() {
+        return openCount.get() > 0;
+    }
+
+    int getOpenCount() {
+        return openCount.get();
+    }
+
+    synchronized long begin() {
+        openCount.incrementAndGet();
+        long snapshot = clock.get();
+        snapshots.merge(snapshot, 1, Integer::sum);
+        return snapshot;
+    }
+
+    synchronized void end(long snapshot) {
+        snapshots.computeIfPresent(snapshot, (key, count) -> count == 1 ? null : count - 1);
+        openCount.decrementAndGet();
+    }
+
+    // no open transaction, nor one that begins later, reads an older snapshot than this
+    synchronized long getOldestSnapshot() {
+        return snapshots.isEmpty() ? clock.get() : snapshots.firstKey();
+    }
+
+    void startCollector(Supplier<? extends Collection<Type>> types) {
+        collector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "datenbank-versions");
+            thread.setDaemon(true);
+            return thread;
+        });
+        collector.scheduleWithFixedDelay(() -> collect(types.get()),
+                COLLECT_INTERVAL_MILLIS, COLLECT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // returns the number of versions dropped
+    int collect(Collection<Type> types) {
+        long start = System.nanoTime();
+        long oldestSnapshot = getOldestSnapshot();
+        int dropped = 0;
+        for (Type type : types) {
+            try {
+                dropped += type.pruneVersions(oldestSnapshot);
+            } catch (RuntimeException e) {
+                // the next run tries again, an exception must not cancel the schedule
+                Logger.error("Cannot drop old versions of '%s': %s", type.getName(), e);
+            }
+        }
+        if (dropped > 0) {
+            metrics.add("versions.dropped", dropped);
+            Logger.debug("Dropped %d versions older than snapshot %d", dropped, oldestSnapshot);
+        }
+        metrics.record("versions.collect", start);
+        return dropped;
+    }
+
+    void stopCollector() {
+        if (collector == null) return;
+
+        collector.shutdown();
+        try {
+            collector.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        collector = null;
+    }
+}
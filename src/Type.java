@@ -1,21 +1,65 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 class Type {
     private static final int MAX_NAME_LENGTH = 10;
     private static final int MAX_FIELD_NAME_LENGTH = 8;
-    private final int MAX_FIELD_COUNT = 8;
+    private static final int MAX_FIELD_COUNT = 8;
+    private static final int LOAD_PROGRESS_ROWS = 100000;
+    private static final Pattern SERIALIZED_PATTERN = Pattern.compile(
+            "^(\\w+)\\s*" // name + right pad
+                    + "!" // separator
+                    + "(\\d+):" // field count
+                    + "(\\w+)\\s*:" // key field + right pad
+                    + "((\\w+\\s*,?)+)$"); // comma separated field names with padding
     private String name;
     private ArrayList<String> fields;
     private String keyField;
-    private ArrayList<Page> pages;
+    // field name to position in the records, resolved once here instead of per record
+    private HashMap<String, Integer> fieldIndexes;
+    private int keyFieldIndex;
+    private HashMap<String, RecordId> primaryIndex;
+    // bit i set when field i has an index, the key field's being the B+ tree; kept in the catalog
+    private int indexMask;
+    private HashMap<Integer, SecondaryIndex> secondaryIndexes;
+    private BPlusTree keyTree;
+    private BufferPool bufferPool;
+    private StorageMode storageMode;
+    private WriteAheadLog log;
+    private Metrics metrics;
+    private TypeFile typeFile;
+    private FreeSpaceMap freeSpaceMap;
+    private TypeStatistics statistics;
+    private TransactionManager transactions;
+    // the records that changes replaced while transactions were open, by key, until no snapshot can see them
+    private HashMap<String, Version> versions;
+    // readers share the type, record changes and file maintenance are exclusive
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean dropped;
+    // set while recovery replays the log, whose records must not be appended to it a second time
+    private volatile boolean replaying;
+    // the data file is opened and indexed on first access, so opening a catalog reads metadata only
+    private volatile boolean loaded;
 
     Type(String name, ArrayList<String> fields, String keyField) throws InvalidTypeException {
+        if (isNameTooLong(name)) {
+            throw new InvalidTypeException(String.format("Type names cannot be longer than %d chars", MAX_NAME_LENGTH));
+        }
+
         if (hasNoFields(fields)) {
             throw new InvalidTypeException("A type must have at least 1 field");
         }
@@ -39,10 +83,25 @@ class Type {
         this.name = name;
         this.fields = fields;
         this.keyField = keyField;
-        pages = new ArrayList<>();
+        fieldIndexes = new HashMap<>();
+        for (int i = 0; i < fields.size(); i++) {
+            fieldIndexes.put(fields.get(i), i);
+        }
+        keyFieldIndex = fields.indexOf(keyField);
+        primaryIndex = new HashMap<>();
+        secondaryIndexes = new HashMap<>();
+        statistics = new TypeStatistics();
+        storageMode = StorageMode.STANDARD;
+        metrics = new Metrics();
+        transactions = new TransactionManager(metrics);
+        versions = new HashMap<>();
     }
 
 
+    private boolean isNameTooLong(String name) {
+        return name.length() > MAX_NAME_LENGTH;
+    }
+
     private boolean hasNoFields(ArrayList<String> fields) {
         return fields.size() == 0;
     }
@@ -69,15 +128,39 @@ class Type {
         return !fields.contains(keyField);
     }
 
-    static Type createFromSerialized(String serialized) throws InvalidTypeException, IOException, InvalidPageException {
-        String regex = "^(\\w+)\\s*" // name + right pad
-                + "!" // separator
-                + "(\\d+):" // field count
-                + "(\\w+)\\s*:" // key field + right pad
-                + "((\\w+\\s*,?)+)$"; // comma separated field names with padding
+    static int getEncodedLength() {
+        // name, field count, key field index, then a fixed number of field name slots
+        return StringCodec.getEncodedLength(MAX_NAME_LENGTH) + 2
+                + MAX_FIELD_COUNT * StringCodec.getEncodedLength(MAX_FIELD_NAME_LENGTH);
+    }
+
+    static Type createFromBuffer(ByteBuffer buffer) throws InvalidTypeException {
+        String name = StringCodec.get(buffer, MAX_NAME_LENGTH);
+        int fieldCount = buffer.get();
+        int keyFieldIndex = buffer.get();
+        ArrayList<String> fields = new ArrayList<>();
+        for (int i = 0; i < MAX_FIELD_COUNT; i++) {
+            String field = StringCodec.get(buffer, MAX_FIELD_NAME_LENGTH);
+            if (i < fieldCount) fields.add(field);
+        }
 
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(serialized);
+        if (keyFieldIndex < 0 || keyFieldIndex >= fields.size()) {
+            throw new InvalidTypeException("Type does not have proper encoding");
+        }
+        return new Type(name, fields, fields.get(keyFieldIndex));
+    }
+
+    void writeTo(ByteBuffer buffer) {
+        StringCodec.put(buffer, name, MAX_NAME_LENGTH);
+        buffer.put((byte) fields.size());
+        buffer.put((byte) keyFieldIndex);
+        for (int i = 0; i < MAX_FIELD_COUNT; i++) {
+            StringCodec.put(buffer, i < fields.size() ? fields.get(i) : "", MAX_FIELD_NAME_LENGTH);
+        }
+    }
+
+    static Type createFromSerialized(String serialized) throws InvalidTypeException {
+        Matcher matcher = SERIALIZED_PATTERN.matcher(serialized);
         if (!matcher.matches()) {
             throw new InvalidTypeException("Type does not have proper encoding");
         }
@@ -89,134 +172,1254 @@ class Type {
                 .split("\\s*,\\s*", fieldCount);
         ArrayList<String> fieldList = new ArrayList<>(Arrays.asList(fields));
 
-        Type type = new Type(name, fieldList, keyField);
-        type.getAllPages();
-        return type;
+        return new Type(name, fieldList, keyField);
+    }
+
+    // returns the log sequence number to sync on, or 0 when nothing changed
+    long createRecord(HashMap<String, String> values) throws IOException, InvalidRecordException, InvalidPageException {
+        load();
+        lock.writeLock().lock();
+        try {
+            checkNotDropped();
+            String key = getKey(values);
+            if (primaryIndex.containsKey(key)) {
+                Logger.info("Record with key '%s' already exists.", key);
+                return 0;
+            }
+
+            Record record = new Record(this, values);
+            long lsn = insertRecord(record, values, transactions.nextTimestamp());
+            if (Logger.isEnabled(Logger.Level.TRACE)) {
+                Logger.trace("No existing record with key '%s'", key);
+                Logger.trace("Inserting at Page #%d", primaryIndex.get(record.getKeyValue()).getPageId());
+            }
+            Logger.debug("A '%s' record has been created", name);
+            return lsn;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void createRecords(List<? extends Map<String, String>> rows, BatchResult result) throws IOException, InvalidPageException {
+        load();
+        lock.writeLock().lock();
+        try {
+            checkNotDropped();
+            // the whole batch becomes visible to transactions at once
+            long timestamp = transactions.nextTimestamp();
+            for (Map<String, String> row : rows) {
+                HashMap<String, String> values = new HashMap<>(row);
+                String key;
+                try {
+                    key = getKey(values);
+                } catch (InvalidRecordException e) {
+                    result.add(null, BatchResult.Status.INVALID, e.getMessage());
+                    continue;
+                }
+                // the index is updated as the batch goes, so this also catches duplicates within the batch
+                if (primaryIndex.containsKey(key)) {
+                    result.add(key, BatchResult.Status.DUPLICATE, "Record already exists");
+                    continue;
+                }
+
+                Record record;
+                try {
+                    record = new Record(this, values);
+                } catch (InvalidRecordException e) {
+                    result.add(key, BatchResult.Status.INVALID, e.getMessage());
+                    continue;
+                }
+                result.setLsn(insertRecord(record, values, timestamp));
+                result.add(key, BatchResult.Status.CREATED, null);
+            }
+            Logger.info("Created %d of %d '%s' records", result.count(BatchResult.Status.CREATED), rows.size(), name);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // checked before anything is logged, the indexes cannot take a record without a key
+    // an empty key is missing too, as it is for bulkLoad and updateRecord
+    String getKey(Map<String, String> values) throws InvalidRecordException {
+        String key = values.get(keyField);
+        if (key == null || key.isEmpty()) throw new InvalidRecordException(String.format("Missing key field '%s'", keyField));
+        return key;
+    }
+
+    private long insertRecord(Record record, HashMap<String, String> values, long timestamp) throws IOException, InvalidPageException {
+        long lsn = append(LogRecord.create(name, values));
+        placeRecord(record, lsn);
+        addVersion(record.getKeyValue(), null, record, timestamp);
+        return lsn;
+    }
+
+    // returns 0 while the log is replayed, as the pages then only need the records already in it
+    private long append(LogRecord record) throws IOException {
+        return replaying ? 0 : log.append(record);
+    }
+
+    void setReplaying(boolean replaying) {
+        this.replaying = replaying;
     }
 
-    void createRecord(HashMap<String, String> values) throws IOException, InvalidRecordException {
-        Record record = getRecord(values.get(keyField));
-        if (record != null) {
-            Logger.log(String.format("Record with key '%s' already exists.", values.get(keyField)));
-            return;
+    // A write that a crash interrupts can leave a page on disk half old and half new, which no logical
+    // record repairs. So the first change to a page after each checkpoint also logs the whole page, and
+    // the page cannot be written before that image is durable.
+    private void logPageImage(Page page) throws IOException {
+        if (replaying || log == null) return;
+        long epoch = log.getEpoch();
+        if (page.getImageEpoch() == epoch) return;
+
+        ByteBuffer image = ByteBuffer.allocate(Page.getEncodedLength(this));
+        page.writeTo(this, image);
+        page.setLsn(log.append(LogRecord.pageImage(name, page.getId(), image.array())));
+        page.setImageEpoch(epoch);
+        metrics.increment("log.pageImages");
+    }
+
+    // Writes back a page image from the log when the page on disk cannot be read, before the type is
+    // loaded and the log replayed; returns whether it did.
+    boolean restorePage(int id, byte[] image) throws IOException, InvalidPageException {
+        lock.writeLock().lock();
+        try {
+            checkNotDropped();
+            ByteBuffer buffer = getTypeFile().readPage(id);
+            try {
+                if (buffer != null && Page.createFromBuffer(this, buffer) != null) return false;
+            } catch (InvalidPageException e) {
+                Logger.info("Restoring Page #%d of '%s': %s", id, name, e.getMessage());
+            }
+            writePage(Page.createFromBuffer(this, ByteBuffer.wrap(image)));
+            getTypeFile().force();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
         }
+    }
 
-        record = new Record(this, values);
+    private void placeRecord(Record record, long lsn) throws IOException, InvalidPageException {
         Page page = getEmptyOrNewPage();
-        page.addRecord(record);
-        addOrUpdatePage(page);
-        savePages();
-        Logger.log(String.format("No existing record with key '%s'", values.get(getKeyField())));
-        Logger.log(String.format("Inserting at Page #%d", page.getId()));
-        Logger.log(String.format("A '%s' record has been created", name));
-        // TODO: update catalog with page count
+        try {
+            int slot = page.addRecord(record);
+            page.setLsn(lsn);
+            logPageImage(page);
+            freeSpaceMap.setUsed(page.getId(), page.getUsedCount());
+            statistics.recordAdded();
+            primaryIndex.put(record.getKeyValue(), new RecordId(page.getId(), slot));
+            if (keyTree != null) keyTree.put(record.getKeyValue(), new RecordId(page.getId(), slot));
+            for (SecondaryIndex index : secondaryIndexes.values()) {
+                index.add(record);
+            }
+        } finally {
+            bufferPool.unpinPage(this, page.getId());
+        }
+    }
+
+    // Keeps the record a change replaced for the open transactions, which read it until the change is older
+    // than their snapshots. Without open transactions nothing is kept, unless the key already has versions:
+    // the newest one must always be the record on the page.
+    private void addVersion(String key, Record before, Record after, long timestamp) {
+        Version latest = versions.get(key);
+        if (latest == null) {
+            if (!transactions.hasOpenTransactions()) return;
+            // the replaced record is older than every open snapshot
+            latest = new Version(0, before, null);
+        }
+        versions.put(key, new Version(timestamp, after, latest));
+    }
+
+    private Page getEmptyOrNewPage() throws IOException, InvalidPageException {
+        int id = freeSpaceMap.findPageWithSpace();
+        if (id > 0) return bufferPool.fetchPage(this, id);
+
+        statistics.pageAdded(Page.getCapacity(), Page.getEncodedLength(this));
+        return bufferPool.newPage(this, freeSpaceMap.allocatePage());
+    }
+
+    // Streams CSV rows, with a header line naming the columns, into new pages appended to the type file.
+    // The pages are filled to capacity and written in order without going through the buffer pool or the
+    // log, the secondary indexes take a page's records as it is written, and the key tree takes all the new
+    // keys at the end. Readers wait
+    // for the whole load; the caller checkpoints around it, since a crash midway keeps only the pages
+    // written so far.
+    void bulkLoad(BufferedReader reader, LoadResult result) throws IOException, InvalidPageException, InvalidRecordException {
+        load();
+        lock.writeLock().lock();
+        try {
+            checkNotDropped();
+            int[] columns = getColumnFieldIndexes(reader.readLine());
+            long timestamp = transactions.nextTimestamp();
+            ArrayList<String> loadedKeys = new ArrayList<>();
+            Page page = null;
+            String line;
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty()) continue;
+
+                String[] row = Csv.parseLine(line);
+                String error = validateRow(row, columns);
+                if (error != null) {
+                    result.reject(lineNumber, error);
+                    continue;
+                }
+                String[] values = new String[fields.size()];
+                for (int i = 0; i < columns.length; i++) {
+                    values[columns[i]] = row[i];
+                }
+
+                if (page == null) {
+                    page = new Page(freeSpaceMap.allocatePage());
+                    statistics.pageAdded(Page.getCapacity(), Page.getEncodedLength(this));
+                }
+                Record record = new Record(this, values);
+                int slot = page.addRecord(record);
+                primaryIndex.put(values[keyFieldIndex], new RecordId(page.getId(), slot));
+                addVersion(values[keyFieldIndex], null, record, timestamp);
+                statistics.recordAdded();
+                result.loaded();
+                if (!page.hasSpace()) {
+                    writeLoadedPage(page, loadedKeys);
+                    page = null;
+                }
+                if (result.getLoadedCount() % LOAD_PROGRESS_ROWS == 0) {
+                    Logger.info("Loaded %d rows into '%s' (%.0f rows/s)", result.getLoadedCount(), name, result.getRowsPerSecond());
+                }
+            }
+            if (page != null) writeLoadedPage(page, loadedKeys);
+            getTypeFile().force();
+
+            if (keyTree != null) {
+                long start = System.nanoTime();
+                // sorted inserts only ever touch the rightmost path of the tree when the loaded keys follow the existing ones
+                Collections.sort(loadedKeys);
+                for (String key : loadedKeys) {
+                    keyTree.put(key, primaryIndex.get(key));
+                }
+                Logger.info("Added %d keys to the key tree of '%s' in %d ms", loadedKeys.size(), name, (System.nanoTime() - start) / 1000000);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int[] getColumnFieldIndexes(String header) throws InvalidRecordException {
+        if (header == null) throw new InvalidRecordException("The file has no header line");
+
+        String[] columns = Csv.parseLine(header);
+        int[] fieldIndexes = new int[columns.length];
+        boolean hasKey = false;
+        for (int i = 0; i < columns.length; i++) {
+            fieldIndexes[i] = getFieldIndex(columns[i].trim());
+            if (fieldIndexes[i] < 0) {
+                throw new InvalidRecordException(String.format("Type '%s' has no field '%s'", name, columns[i].trim()));
+            }
+            for (int j = 0; j < i; j++) {
+                if (fieldIndexes[j] == fieldIndexes[i]) {
+                    throw new InvalidRecordException(String.format("Field '%s' appears twice in the header", columns[i].trim()));
+                }
+            }
+            hasKey |= fieldIndexes[i] == keyFieldIndex;
+        }
+        if (!hasKey) throw new InvalidRecordException(String.format("The header is missing the key field '%s'", keyField));
+        return fieldIndexes;
+    }
+
+    // returns why the row cannot be loaded, or null when it can
+    private String validateRow(String[] row, int[] columns) {
+        if (row.length != columns.length) {
+            return String.format("Expected %d values, found %d", columns.length, row.length);
+        }
+        for (int i = 0; i < row.length; i++) {
+            if (row[i].length() > Record.MAX_FIELD_VALUE_LENGTH) {
+                return String.format("Value of '%s' is longer than %d chars", fields.get(columns[i]), Record.MAX_FIELD_VALUE_LENGTH);
+            }
+            if (columns[i] != keyFieldIndex) continue;
+            if (row[i].isEmpty()) return "Missing key";
+            if (primaryIndex.containsKey(row[i])) return String.format("Duplicate key '%s'", row[i]);
+        }
+        return null;
+    }
+
+    private void writeLoadedPage(Page page, ArrayList<String> loadedKeys) throws IOException {
+        writePage(page);
+        freeSpaceMap.setUsed(page.getId(), page.getUsedCount());
+        // the written page is still at hand, so the secondary indexes take its records now rather than in a
+        // second read of the loaded pages; the key tree gets the keys at the end, sorted
+        for (Record record : page.getRecords()) {
+            for (SecondaryIndex index : secondaryIndexes.values()) {
+                index.add(record);
+            }
+            if (keyTree != null) loadedKeys.add(record.getKeyValue());
+        }
+    }
+
+    ArrayList<Record> getRecords() throws IOException, InvalidPageException {
+        load();
+        lock.readLock().lock();
+        try {
+            checkNotDropped();
+            ArrayList<Record> records = new ArrayList<>();
+            for (int id = 1; id <= freeSpaceMap.getPageCount(); id++) {
+                Page page = bufferPool.fetchPage(this, id);
+                records.addAll(page.getRecords());
+                bufferPool.unpinPage(this, id);
+            }
+            return records;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // the records of one page; a page that is not pooled is read without being added, so a full scan
+    // does not evict the pages other operations are working with
+    ArrayList<Record> scanPage(int pageId) throws IOException, InvalidPageException {
+        load();
+        lock.readLock().lock();
+        try {
+            checkNotDropped();
+            if (pageId > freeSpaceMap.getPageCount()) return new ArrayList<>();
+
+            // with the type locked for reading no page changes, and one that is not pooled is current on disk
+            Page page = bufferPool.peekPage(this, pageId);
+            if (page == null) page = readPage(pageId);
+            return page.getRecords();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // the length of the type file, which a mapped file keeps at whole chunks
+    long getFileSize() throws IOException {
+        lock.readLock().lock();
+        try {
+            checkNotDropped();
+            return getTypeFile().getSize();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // copies the header and pages of the type file to the sink; the caller makes sure the file is current
+    // and that no page is written meanwhile
+    long transferTo(WritableByteChannel sink) throws IOException {
+        // a type that is not loaded has nothing pooled, so its file is copied without indexing it first
+        lock.readLock().lock();
+        try {
+            checkNotDropped();
+            TypeFile file = getTypeFile();
+            // a mapped file can extend past its last page, so the length comes from the page count
+            long length = file.getOffset(file.getPageCount() + 1);
+            long position = 0;
+            while (position < length) {
+                long transferred = file.getChannel().transferTo(position, length - position, sink);
+                if (transferred == 0 && position >= file.getChannel().size()) {
+                    throw new IOException(String.format("Unexpected end of '%s'", file.getFilename()));
+                }
+                position += transferred;
+            }
+            return length;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // uses the secondary index on the field when there is one, otherwise scans every page
+    ArrayList<Record> findRecords(String field, String value) throws IOException, InvalidPageException, InvalidTypeException {
+        load();
+        lock.readLock().lock();
+        try {
+            checkNotDropped();
+            int fieldIndex = getFieldIndex(field);
+            if (fieldIndex < 0) {
+                throw new InvalidTypeException(String.format("Type '%s' has no field '%s'", name, field));
+            }
+
+            ArrayList<Record> records = new ArrayList<>();
+            SecondaryIndex index = secondaryIndexes.get(fieldIndex);
+            if (fieldIndex != keyFieldIndex && index == null) {
+                for (int id = 1; id <= freeSpaceMap.getPageCount(); id++) {
+                    Page page = bufferPool.fetchPage(this, id);
+                    for (Record record : page.getRecords()) {
+                        if (record.getValue(fieldIndex).equals(value)) records.add(record);
+                    }
+                    bufferPool.unpinPage(this, id);
+                }
+                return records;
+            }
+
+            List<String> keys = fieldIndex == keyFieldIndex ? Collections.singletonList(value) : index.getKeys(value);
+            for (String key : keys) {
+                RecordId rid = primaryIndex.get(key);
+                if (rid == null) continue;
+
+                Page page = bufferPool.fetchPage(this, rid.getPageId());
+                records.add(page.getRecord(rid.getSlot()));
+                bufferPool.unpinPage(this, rid.getPageId());
+            }
+            return records;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // an index on the key field is a B+ tree for ordered scans; returns false when the field already has an index
+    boolean createIndex(String field) throws IOException, InvalidPageException, InvalidTypeException {
+        load();
+        lock.writeLock().lock();
+        try {
+            checkNotDropped();
+            int fieldIndex = getFieldIndex(field);
+            if (fieldIndex < 0) {
+                throw new InvalidTypeException(String.format("Type '%s' has no field '%s'", name, field));
+            }
+            if ((indexMask & (1 << fieldIndex)) != 0) return false;
+
+            if (fieldIndex == keyFieldIndex) {
+                keyTree = buildKeyTree();
+                indexMask |= 1 << fieldIndex;
+                return true;
+            }
+
+            SecondaryIndex index = new SecondaryIndex(getIndexFilename(fieldIndex), fieldIndex);
+            buildIndex(index);
+            index.save();
+            secondaryIndexes.put(fieldIndex, index);
+            indexMask |= 1 << fieldIndex;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
-    private void addOrUpdatePage(Page page) {
-        for (int i = 0; i < pages.size(); i++) {
-            Page p = pages.get(i);
-            if (p.getId() == page.getId()) {
-                pages.set(i, page);
-                return;
+    private void buildIndex(SecondaryIndex index) throws IOException, InvalidPageException {
+        for (int id = 1; id <= freeSpaceMap.getPageCount(); id++) {
+            Page page = bufferPool.fetchPage(this, id);
+            for (Record record : page.getRecords()) {
+                index.add(record);
+            }
+            bufferPool.unpinPage(this, id);
+        }
+    }
+
+    private BPlusTree buildKeyTree() throws IOException {
+        BPlusTree tree = BPlusTree.create(getIndexFilename(keyFieldIndex));
+        // sorted inserts only ever touch the rightmost path of the tree
+        ArrayList<String> keys = new ArrayList<>(primaryIndex.keySet());
+        Collections.sort(keys);
+        for (String key : keys) {
+            tree.put(key, primaryIndex.get(key));
+        }
+        tree.save();
+        return tree;
+    }
+
+    // records with keys in [fromKey, toKey] in key order; a null bound is open and limit 0 means no limit
+    ArrayList<Record> rangeScan(String fromKey, String toKey, int limit) throws IOException, InvalidPageException {
+        load();
+        lock.readLock().lock();
+        try {
+            checkNotDropped();
+            ArrayList<Record> records = new ArrayList<>();
+            if (keyTree == null) {
+                for (int id = 1; id <= freeSpaceMap.getPageCount(); id++) {
+                    Page page = bufferPool.fetchPage(this, id);
+                    for (Record record : page.getRecords()) {
+                        if (isInRange(record.getKeyValue(), fromKey, toKey)) records.add(record);
+                    }
+                    bufferPool.unpinPage(this, id);
+                }
+                records.sort(Comparator.comparing(Record::getKeyValue));
+                return limit > 0 && records.size() > limit ? new ArrayList<>(records.subList(0, limit)) : records;
+            }
+
+            for (RecordId rid : keyTree.range(fromKey, toKey, limit)) {
+                Page page = bufferPool.fetchPage(this, rid.getPageId());
+                records.add(page.getRecord(rid.getSlot()));
+                bufferPool.unpinPage(this, rid.getPageId());
+            }
+            return records;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // conditions and projection are applied to the records in the pooled pages as they are visited,
+    // so only matching rows allocate anything
+    ArrayList<String[]> query(Query query) throws IOException, InvalidPageException, InvalidTypeException {
+        ArrayList<Query.Condition> conditions = query.getConditions();
+        for (Query.Condition condition : conditions) {
+            if (condition.getFieldIndex() < 0) {
+                throw new InvalidTypeException(String.format("Type '%s' has no field '%s'", name, condition.getField()));
+            }
+        }
+        int[] columns = new int[query.getColumns().size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = getFieldIndex(query.getColumns().get(i));
+            if (columns[i] < 0) {
+                throw new InvalidTypeException(String.format("Type '%s' has no field '%s'", name, query.getColumns().get(i)));
+            }
+        }
+
+        load();
+        lock.readLock().lock();
+        try {
+            checkNotDropped();
+            ArrayList<String[]> rows = new ArrayList<>();
+            Collection<RecordId> candidates = findCandidates(conditions, query.getLimit());
+            if (candidates == null) {
+                for (int id = 1; id <= freeSpaceMap.getPageCount(); id++) {
+                    Page page = bufferPool.fetchPage(this, id);
+                    try {
+                        for (int slot = 0; slot < page.getSize(); slot++) {
+                            if (!collect(page.getRecord(slot), conditions, columns, rows, query.getLimit())) return rows;
+                        }
+                    } finally {
+                        bufferPool.unpinPage(this, id);
+                    }
+                }
+                return rows;
+            }
+
+            for (RecordId rid : candidates) {
+                Page page = bufferPool.fetchPage(this, rid.getPageId());
+                Record record = page.getRecord(rid.getSlot());
+                bufferPool.unpinPage(this, rid.getPageId());
+                if (!collect(record, conditions, columns, rows, query.getLimit())) return rows;
+            }
+            return rows;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // returns false once the limit is reached
+    private static boolean collect(Record record, ArrayList<Query.Condition> conditions, int[] columns,
+                                   ArrayList<String[]> rows, int limit) {
+        if (record == null) return true;
+        for (Query.Condition condition : conditions) {
+            if (!condition.test(record)) return true;
+        }
+
+        String[] row = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            row[i] = record.getValue(columns[i]);
+        }
+        rows.add(row);
+        return limit <= 0 || rows.size() < limit;
+    }
+
+    // slots that can satisfy the conditions, from the cheapest index that applies, or null to scan every page;
+    // every candidate is still checked against all the conditions
+    private Collection<RecordId> findCandidates(ArrayList<Query.Condition> conditions, int limit) throws IOException {
+        for (Query.Condition condition : conditions) {
+            if (condition.getOperator() != Query.Operator.EQ || condition.getFieldIndex() != keyFieldIndex) continue;
+
+            Logger.debug("Querying '%s' through the key index", name);
+            RecordId rid = primaryIndex.get(condition.getValue());
+            return rid == null ? Collections.emptyList() : Collections.singletonList(rid);
+        }
+
+        for (Query.Condition condition : conditions) {
+            SecondaryIndex index = secondaryIndexes.get(condition.getFieldIndex());
+            if (condition.getOperator() != Query.Operator.EQ || index == null) continue;
+
+            Logger.debug("Querying '%s' through the index on '%s'", name, condition.getField());
+            ArrayList<RecordId> rids = new ArrayList<>();
+            for (String key : index.getKeys(condition.getValue())) {
+                rids.add(primaryIndex.get(key));
+            }
+            return rids;
+        }
+
+        if (keyTree == null) return null;
+        String fromKey = null;
+        String toKey = null;
+        boolean onlyKeyRanges = true;
+        for (Query.Condition condition : conditions) {
+            Query.Operator operator = condition.getOperator();
+            boolean lower = operator == Query.Operator.GT || operator == Query.Operator.GE;
+            boolean upper = operator == Query.Operator.LT || operator == Query.Operator.LE;
+            if (condition.getFieldIndex() != keyFieldIndex || !(lower || upper)) {
+                onlyKeyRanges = false;
+                continue;
+            }
+
+            String value = condition.getValue();
+            if (lower && (fromKey == null || value.compareTo(fromKey) > 0)) {
+                fromKey = value;
+            } else if (upper && (toKey == null || value.compareTo(toKey) < 0)) {
+                toKey = value;
             }
         }
-        pages.add(page);
+        if (fromKey == null && toKey == null) return null;
+
+        Logger.debug("Querying '%s' through the key tree", name);
+        // with nothing else to check, the range can stop at the limit; its bounds are inclusive,
+        // so a strict bound drops at most the key at each end
+        return keyTree.range(fromKey, toKey, onlyKeyRanges && limit > 0 ? limit + 2 : 0);
+    }
+
+    private static boolean isInRange(String key, String fromKey, String toKey) {
+        return (fromKey == null || key.compareTo(fromKey) >= 0) && (toKey == null || key.compareTo(toKey) <= 0);
+    }
+
+    int getIndexMask() {
+        return indexMask;
     }
 
-    private Page getEmptyOrNewPage() {
-        for (Page page : pages) {
-            if (page.hasSpace()) return page;
+    void setIndexMask(int indexMask) {
+        this.indexMask = indexMask;
+    }
+
+    TypeStatistics getStatistics() {
+        lock.readLock().lock();
+        try {
+            return statistics.copy();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void setStatistics(TypeStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    int getPageCount() throws IOException, InvalidPageException {
+        load();
+        lock.readLock().lock();
+        try {
+            return freeSpaceMap.getPageCount();
+        } finally {
+            lock.readLock().unlock();
         }
+    }
 
-        return new Page(getNewPageId());
+    Record getRecord(String key) throws IOException, InvalidPageException {
+        load();
+        lock.readLock().lock();
+        try {
+            checkNotDropped();
+            return findRecord(key);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
-    private int getNewPageId() {
-        int id = 0;
-        for (Page page : pages) {
-            if (page.getId() > id) id = page.getId();
+    // the record as of the snapshot
+    Record getRecord(String key, long snapshot) throws IOException, InvalidPageException {
+        load();
+        lock.readLock().lock();
+        try {
+            checkNotDropped();
+            Version latest = versions.get(key);
+            // a key without versions has not changed since the oldest open snapshot
+            if (latest == null) return findRecord(key);
+            return getRecord(latest, snapshot);
+        } finally {
+            lock.readLock().unlock();
         }
-        return ++id;
     }
 
-    ArrayList<Record> getRecords() {
+    private static Record getRecord(Version latest, long snapshot) {
+        Version version = latest.find(snapshot);
+        return version == null ? null : version.getRecord();
+    }
+
+    private Record findRecord(String key) throws IOException, InvalidPageException {
+        RecordId rid = primaryIndex.get(key);
+        if (rid == null) return null;
+
+        Page page = bufferPool.fetchPage(this, rid.getPageId());
+        if (Logger.isEnabled(Logger.Level.TRACE)) Logger.trace("Reading Page #%d", page.getId());
+        Record record = page.getRecord(rid.getSlot());
+        bufferPool.unpinPage(this, page.getId());
+        return record;
+    }
+
+    // The records as of the snapshot. Each page is read under the read lock on its own, so writers wait for
+    // one page at most; records changed since the snapshot are read from their versions, and the ones
+    // deleted since are added from them at the end. Pages are visited from the last one down, as compaction
+    // only moves records to lower pages: a record moved meanwhile is met twice rather than missed.
+    ArrayList<Record> getRecords(long snapshot) throws IOException, InvalidPageException {
+        HashSet<String> seen = new HashSet<>();
         ArrayList<Record> records = new ArrayList<>();
-        for (Page page : pages) {
-            records.addAll(page.getRecords());
+        for (int id = getPageCount(); id >= 1; id--) {
+            lock.readLock().lock();
+            try {
+                checkNotDropped();
+                if (id > freeSpaceMap.getPageCount()) continue;
+
+                // like scanPage, a page that is not pooled is read without evicting anything
+                Page page = bufferPool.peekPage(this, id);
+                if (page == null) page = readPage(id);
+                for (Record record : page.getRecords()) {
+                    addVisibleRecord(record.getKeyValue(), record, snapshot, seen, records);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        lock.readLock().lock();
+        try {
+            checkNotDropped();
+            for (String key : versions.keySet()) {
+                addVisibleRecord(key, null, snapshot, seen, records);
+            }
+        } finally {
+            lock.readLock().unlock();
         }
         return records;
     }
 
-    Record getRecord(String key) {
-        for (Page page : pages) {
-            Logger.log(String.format("Reading Page #%d", page.getId()));
-            Record record = page.getRecord(key);
-            if (record != null) return record;
+    private void addVisibleRecord(String key, Record onPage, long snapshot, HashSet<String> seen, ArrayList<Record> records) {
+        if (!seen.add(key)) return;
+
+        Version latest = versions.get(key);
+        Record record = latest == null ? onPage : getRecord(latest, snapshot);
+        if (record != null) records.add(record);
+    }
+
+    // returns the log sequence number to sync on, or 0 when nothing changed
+    long deleteRecord(String key) throws IOException, InvalidPageException {
+        load();
+        lock.writeLock().lock();
+        try {
+            checkNotDropped();
+            RecordId rid = primaryIndex.get(key);
+            if (rid == null) return 0;
+
+            if (Logger.isEnabled(Logger.Level.TRACE)) Logger.trace("Reading Page #%d", rid.getPageId());
+            long lsn = removeRecord(key, rid, transactions.nextTimestamp());
+            Logger.debug("A '%s' record with key '%s' has been deleted", name, key);
+            return lsn;
+        } finally {
+            lock.writeLock().unlock();
         }
-        return null;
     }
 
-    void deleteRecord(String key) throws IOException {
-        for (Page page : pages) {
-            Logger.log(String.format("Reading Page #%d", page.getId()));
-            Record record = page.getRecord(key);
-            if (record == null) continue;
+    void deleteRecords(Collection<String> keys, BatchResult result) throws IOException, InvalidPageException {
+        load();
+        lock.writeLock().lock();
+        try {
+            checkNotDropped();
+            long timestamp = transactions.nextTimestamp();
+            for (String key : keys) {
+                RecordId rid = primaryIndex.get(key);
+                if (rid == null) {
+                    result.add(key, BatchResult.Status.NOT_FOUND, "No record with this key");
+                    continue;
+                }
+                result.setLsn(removeRecord(key, rid, timestamp));
+                result.add(key, BatchResult.Status.DELETED, null);
+            }
+            Logger.info("Deleted %d of %d '%s' records", result.count(BatchResult.Status.DELETED), keys.size(), name);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private long removeRecord(String key, RecordId rid, long timestamp) throws IOException, InvalidPageException {
+        long lsn = append(LogRecord.delete(name, key));
+        Record record = clearRecord(key, rid, lsn);
+        addVersion(key, record, null, timestamp);
+        return lsn;
+    }
+
+    // returns the record removed
+    private Record clearRecord(String key, RecordId rid, long lsn) throws IOException, InvalidPageException {
+        Page page = bufferPool.fetchPage(this, rid.getPageId());
+        try {
+            Record record = page.getRecord(rid.getSlot());
+            for (SecondaryIndex index : secondaryIndexes.values()) {
+                index.remove(record);
+            }
+            page.deleteRecord(rid.getSlot());
+            page.setLsn(lsn);
+            logPageImage(page);
+            freeSpaceMap.setUsed(page.getId(), page.getUsedCount());
+            statistics.recordRemoved();
+            primaryIndex.remove(key);
+            if (keyTree != null) keyTree.remove(key);
+            return record;
+        } finally {
+            bufferPool.unpinPage(this, page.getId());
+        }
+    }
+
+    // Changes the given fields of the record with the key in its slot, so only its page is written back.
+    // Changing the key moves the record to the new key, which must not be taken, and it keeps its slot.
+    // Returns the log sequence number to sync on, or 0 when there is no record with the key.
+    long updateRecord(String key, Map<String, String> changes) throws IOException, InvalidRecordException, InvalidPageException {
+        load();
+        lock.writeLock().lock();
+        try {
+            checkNotDropped();
+            RecordId rid = primaryIndex.get(key);
+            if (rid == null) return 0;
+
+            Page page = bufferPool.fetchPage(this, rid.getPageId());
+            try {
+                Record record = page.getRecord(rid.getSlot());
+                Record updated = getUpdatedRecord(record, changes);
+                String newKey = updated.getKeyValue();
+                if (newKey.equals(key)) {
+                    long lsn = append(LogRecord.upsert(name, updated.getFieldValues()));
+                    replaceRecord(page, rid, record, updated, lsn);
+                    addVersion(key, record, updated, transactions.nextTimestamp());
+                    Logger.debug("A '%s' record with key '%s' has been updated", name, key);
+                    return lsn;
+                }
+
+                if (primaryIndex.containsKey(newKey)) {
+                    throw new InvalidRecordException(String.format("Record with key '%s' already exists", newKey));
+                }
+                // replay deletes the old key and creates the new one, both or neither
+                ArrayList<LogRecord> move = new ArrayList<>();
+                move.add(LogRecord.delete(name, key));
+                move.add(LogRecord.create(name, updated.getFieldValues()));
+                long lsn = append(LogRecord.commit(move));
+                replaceRecord(page, rid, record, updated, lsn);
+                primaryIndex.remove(key);
+                primaryIndex.put(newKey, rid);
+                if (keyTree != null) {
+                    keyTree.remove(key);
+                    keyTree.put(newKey, rid);
+                }
+                long timestamp = transactions.nextTimestamp();
+                addVersion(key, record, null, timestamp);
+                addVersion(newKey, null, updated, timestamp);
+                Logger.debug("A '%s' record has been moved from key '%s' to '%s'", name, key, newKey);
+                return lsn;
+            } finally {
+                bufferPool.unpinPage(this, rid.getPageId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // replays an upsert: the record replaces the one with its key, or is created when there is none
+    long upsertRecord(HashMap<String, String> values) throws IOException, InvalidRecordException, InvalidPageException {
+        String key = values.get(keyField);
+        long lsn = updateRecord(key, values);
+        return lsn > 0 ? lsn : createRecord(values);
+    }
+
+    Record getUpdatedRecord(Record record, Map<String, String> changes) throws InvalidRecordException {
+        String[] values = new String[fields.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = record.getValue(i);
+        }
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            int fieldIndex = getFieldIndex(change.getKey());
+            if (fieldIndex < 0) {
+                throw new InvalidRecordException(String.format("Type '%s' has no field '%s'", name, change.getKey()));
+            }
+            values[fieldIndex] = change.getValue();
+        }
+        if (values[keyFieldIndex] == null || values[keyFieldIndex].isEmpty()) throw new InvalidRecordException("Missing key");
+        return new Record(this, values);
+    }
+
+    // the slot, the free space map and the counts stay as they are, only the indexes and the time of the
+    // last change follow the values
+    private void replaceRecord(Page page, RecordId rid, Record record, Record updated, long lsn) throws IOException {
+        boolean keyChanged = !record.getKeyValue().equals(updated.getKeyValue());
+        for (SecondaryIndex index : secondaryIndexes.values()) {
+            int fieldIndex = index.getFieldIndex();
+            if (!keyChanged && record.getValue(fieldIndex).equals(updated.getValue(fieldIndex))) continue;
+            index.remove(record);
+            index.add(updated);
+        }
+        page.setRecord(rid.getSlot(), updated);
+        page.setLsn(lsn);
+        logPageImage(page);
+        statistics.recordUpdated();
+    }
+
+    // A commit holds the write locks of all its types while it checks for conflicts and applies its changes,
+    // so no reader sees part of it and no other change gets in between.
+    void lockForCommit() throws IOException, InvalidPageException {
+        load();
+        lock.writeLock().lock();
+        try {
+            checkNotDropped();
+        } catch (IOException e) {
+            lock.writeLock().unlock();
+            throw e;
+        }
+    }
+
+    void unlockAfterCommit() {
+        lock.writeLock().unlock();
+    }
+
+    // the timestamp of the newest change to the key, 0 when it is older than every open snapshot;
+    // the caller holds the lock from lockForCommit
+    long getLastChange(String key) {
+        Version latest = versions.get(key);
+        return latest == null ? 0 : latest.getTimestamp();
+    }
+
+    // the caller holds the lock from lockForCommit
+    boolean containsKey(String key) {
+        return primaryIndex.containsKey(key);
+    }
 
-            page.deleteRecord(record);
-            savePages();
-            Logger.log(String.format("A '%s' record with key '%s' has been deleted", name, key));
-            return;
+    // Applies one change of a commit, logged by the caller as part of its commit record: the record replaces
+    // the one with its key in its slot, or null deletes it. The caller holds the lock from lockForCommit.
+    void applyChange(String key, Record record, long lsn, long timestamp) throws IOException, InvalidPageException {
+        RecordId rid = primaryIndex.get(key);
+        Record replaced = null;
+        if (rid != null && record != null) {
+            Page page = bufferPool.fetchPage(this, rid.getPageId());
+            try {
+                replaced = page.getRecord(rid.getSlot());
+                replaceRecord(page, rid, replaced, record, lsn);
+            } finally {
+                bufferPool.unpinPage(this, rid.getPageId());
+            }
+        } else if (rid != null) {
+            replaced = clearRecord(key, rid, lsn);
+        } else if (record != null) {
+            placeRecord(record, lsn);
+        }
+        addVersion(key, replaced, record, timestamp);
+    }
+
+    // Drops the versions that no snapshot at or after oldestSnapshot can see. A key whose newest version
+    // every such snapshot sees loses its versions altogether, as the page holds that version.
+    // Returns the number of versions dropped.
+    int pruneVersions(long oldestSnapshot) {
+        if (!loaded) return 0;
+
+        lock.writeLock().lock();
+        try {
+            int dropped = 0;
+            Iterator<Version> iterator = versions.values().iterator();
+            while (iterator.hasNext()) {
+                Version latest = iterator.next();
+                if (latest.getTimestamp() <= oldestSnapshot) {
+                    dropped += latest.getLength();
+                    iterator.remove();
+                } else {
+                    dropped += latest.prune(oldestSnapshot);
+                }
+            }
+            return dropped;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Moves the records of the last page into free slots of earlier pages, so the page can be cut off by
+    // truncateEmptyPages. Each move is logged as an upsert of the whole record, which recreates it if the
+    // crash leaves neither copy on disk; when both copies survive, load keeps the one on the lower page.
+    // Returns the log sequence number to sync on before truncating, 0 when the last page is already
+    // empty, or -1 when the earlier pages cannot take its records.
+    long compactLastPage() throws IOException, InvalidPageException {
+        load();
+        lock.writeLock().lock();
+        try {
+            checkNotDropped();
+            int lastId = freeSpaceMap.getPageCount();
+            if (lastId == 0) return -1;
+
+            int used = freeSpaceMap.getUsed(lastId);
+            if (used == 0) return 0;
+            long freeBelow = (long) (lastId - 1) * Page.getCapacity() - (freeSpaceMap.getUsedSlots() - used);
+            if (used > freeBelow) return -1;
+
+            long lsn = 0;
+            Page last = bufferPool.fetchPage(this, lastId);
+            try {
+                for (int slot = 0; slot < last.getSize(); slot++) {
+                    Record record = last.getRecord(slot);
+                    if (record == null) continue;
+                    lsn = moveRecord(record, last, slot);
+                }
+            } finally {
+                bufferPool.unpinPage(this, lastId);
+            }
+            return lsn;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private long moveRecord(Record record, Page from, int fromSlot) throws IOException, InvalidPageException {
+        // the free slots are all below the page being emptied, and the lowest ones fill first
+        Page to = bufferPool.fetchPage(this, freeSpaceMap.findPageWithSpace());
+        try {
+            long lsn = append(LogRecord.upsert(name, record.getFieldValues()));
+            int slot = to.addRecord(record);
+            to.setLsn(lsn);
+            logPageImage(to);
+            freeSpaceMap.setUsed(to.getId(), to.getUsedCount());
+            from.deleteRecord(fromSlot);
+            from.setLsn(lsn);
+            logPageImage(from);
+            freeSpaceMap.setUsed(from.getId(), from.getUsedCount());
+            // secondary indexes hold keys, not slots, so only these two follow the record
+            RecordId rid = new RecordId(to.getId(), slot);
+            primaryIndex.put(record.getKeyValue(), rid);
+            if (keyTree != null) keyTree.put(record.getKeyValue(), rid);
+            if (Logger.isEnabled(Logger.Level.TRACE)) {
+                Logger.trace("Moved '%s' from Page #%d to Page #%d", record.getKeyValue(), from.getId(), to.getId());
+            }
+            return lsn;
+        } finally {
+            bufferPool.unpinPage(this, to.getId());
+        }
+    }
+
+    // cuts empty pages off the end of the type file, expecting the moves that emptied them to be durable;
+    // returns the number of pages dropped
+    int truncateEmptyPages() throws IOException, InvalidPageException {
+        load();
+        lock.writeLock().lock();
+        try {
+            checkNotDropped();
+            int pageCount = freeSpaceMap.getPageCount();
+            int kept = pageCount;
+            while (kept > 0 && freeSpaceMap.getUsed(kept) == 0) {
+                bufferPool.discardPage(this, kept);
+                statistics.pageRemoved(Page.getCapacity(), Page.getEncodedLength(this));
+                kept--;
+            }
+            if (kept == pageCount) return 0;
+
+            freeSpaceMap.truncate(kept);
+            getTypeFile().truncate(kept);
+            Logger.debug("Truncated '%s' from %d to %d pages", name, pageCount, kept);
+            return pageCount - kept;
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
-    private void savePages() throws IOException {
-        emptyTypeFile();
-        writePagesToTypeFile();
+    Page readPage(int id) throws IOException, InvalidPageException {
+        long start = System.nanoTime();
+        ByteBuffer buffer = getTypeFile().readPage(id);
+        metrics.record("page.read", start);
+        if (buffer == null) return null;
+
+        metrics.add("page.bytesRead", buffer.remaining());
+        Page page = Page.createFromBuffer(this, buffer);
+        return page == null ? new Page(id) : page;
     }
 
-    private void writePagesToTypeFile() throws IOException {
-        FileWriter fw = new FileWriter(getFilename(), true);
-        for (Page page : pages) {
-            if (page.isEmpty()) continue;
-            fw.write(page.serialize() + System.lineSeparator());
+    void writePage(Page page) throws IOException {
+        if (log != null) log.sync(page.getLsn());
+
+        long start = System.nanoTime();
+        TypeFile file = getTypeFile();
+        ByteBuffer buffer = file.getPageBuffer(page.getId());
+        page.writeTo(this, buffer);
+        buffer.flip();
+        metrics.add("page.bytesWritten", buffer.remaining());
+        file.writePage(page.getId(), buffer);
+        page.markClean();
+        metrics.record("page.write", start);
+    }
+
+    void force() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (!loaded) return;
+            long start = System.nanoTime();
+            if (bufferPool != null) bufferPool.flushPages(this);
+            getTypeFile().force();
+            if (freeSpaceMap != null) freeSpaceMap.save();
+            for (SecondaryIndex index : secondaryIndexes.values()) {
+                index.save();
+            }
+            if (keyTree != null) keyTree.save();
+            metrics.record("type.force", start);
+        } finally {
+            lock.writeLock().unlock();
         }
-        fw.close();
     }
 
-    private void emptyTypeFile() throws FileNotFoundException {
-        new PrintWriter(getFilename()).close();
+    private TypeFile getTypeFile() throws IOException {
+        if (typeFile == null) {
+            typeFile = storageMode == StorageMode.MAPPED
+                    ? new MappedTypeFile(getFilename(), Page.getEncodedLength(this), fields.size())
+                    : new TypeFile(getFilename(), Page.getEncodedLength(this), fields.size());
+        }
+        return typeFile;
+    }
+
+    void open(BufferPool bufferPool, StorageMode storageMode, WriteAheadLog log, Metrics metrics,
+              TransactionManager transactions) throws IOException {
+        lock.writeLock().lock();
+        try {
+            close();
+            this.bufferPool = bufferPool;
+            this.storageMode = storageMode;
+            this.log = log;
+            this.metrics = metrics;
+            this.transactions = transactions;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
-    private ArrayList<Page> getAllPages() throws IOException, InvalidPageException {
-        pages = new ArrayList<>();
-        FileInputStream stream = new FileInputStream(getFilename());
-        BufferedReader br = new BufferedReader(new InputStreamReader(stream));
-        String encodedPage;
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    void load() throws IOException, InvalidPageException {
+        if (loaded) return;
+
+        lock.writeLock().lock();
+        try {
+            checkNotDropped();
+            if (loaded) return;
+
+            long start = System.nanoTime();
+            primaryIndex = new HashMap<>();
+            int pageCount = getTypeFile().getPageCount();
 
-        while ((encodedPage = br.readLine()) != null) {
-            pages.add(Page.createFromSerialized(this, encodedPage));
+            // the map is saved at checkpoints, so after a crash it can lag behind pages evicted since then
+            freeSpaceMap = FreeSpaceMap.load(getFreeSpaceMapFilename(), Page.getCapacity());
+            if (freeSpaceMap == null || freeSpaceMap.getPageCount() != pageCount) {
+                if (pageCount > 0) Logger.info("Rebuilding free space map of '%s'", name);
+                freeSpaceMap = new FreeSpaceMap(getFreeSpaceMapFilename(), Page.getCapacity());
+                for (int id = 1; id <= pageCount; id++) {
+                    freeSpaceMap.allocatePage();
+                }
+            }
+
+            // indexes that cannot be trusted are filled by the same scan that builds the key index
+            secondaryIndexes = new HashMap<>();
+            ArrayList<SecondaryIndex> rebuilt = new ArrayList<>();
+            for (int fieldIndex = 0; fieldIndex < fields.size(); fieldIndex++) {
+                if ((indexMask & (1 << fieldIndex)) == 0 || fieldIndex == keyFieldIndex) continue;
+
+                SecondaryIndex index = SecondaryIndex.load(getIndexFilename(fieldIndex), fieldIndex);
+                if (index == null) {
+                    Logger.info("Rebuilding index on '%s.%s'", name, fields.get(fieldIndex));
+                    index = new SecondaryIndex(getIndexFilename(fieldIndex), fieldIndex);
+                    rebuilt.add(index);
+                }
+                secondaryIndexes.put(fieldIndex, index);
+            }
+
+            for (int id = 1; id <= pageCount; id++) {
+                Page page = bufferPool.fetchPage(this, id);
+                indexPage(page, rebuilt);
+                freeSpaceMap.setUsed(id, page.getUsedCount());
+                bufferPool.unpinPage(this, id);
+            }
+            for (SecondaryIndex index : secondaryIndexes.values()) {
+                if (rebuilt.contains(index) || index.getSize() == primaryIndex.size()) continue;
+
+                Logger.info("Rebuilding stale index on '%s.%s'", name, fields.get(index.getFieldIndex()));
+                SecondaryIndex fresh = new SecondaryIndex(index.getFilename(), index.getFieldIndex());
+                buildIndex(fresh);
+                secondaryIndexes.put(index.getFieldIndex(), fresh);
+            }
+            if ((indexMask & (1 << keyFieldIndex)) != 0) {
+                keyTree = BPlusTree.load(getIndexFilename(keyFieldIndex));
+                if (keyTree == null || keyTree.getSize() != primaryIndex.size()) {
+                    Logger.info("Rebuilding key tree of '%s'", name);
+                    if (keyTree != null) keyTree.close();
+                    keyTree = buildKeyTree();
+                }
+            }
+            // the catalog copy is only as fresh as the last checkpoint, the pages are authoritative
+            long usedSlots = freeSpaceMap.getUsedSlots();
+            statistics.reset(usedSlots, pageCount,
+                    (long) pageCount * Page.getCapacity() - usedSlots,
+                    TypeFile.HEADER_SIZE + (long) pageCount * Page.getEncodedLength(this));
+            loaded = true;
+            metrics.record("type.load", start);
+            Logger.info("Loaded type '%s' (%d pages) in %d ms", name, pageCount, (System.nanoTime() - start) / 1000000);
+        } finally {
+            lock.writeLock().unlock();
         }
+    }
+
+    private void checkNotDropped() throws IOException {
+        if (dropped) throw new IOException(String.format("Type '%s' has been deleted", name));
+    }
 
-        return pages;
+    void drop() throws IOException {
+        lock.writeLock().lock();
+        try {
+            close();
+            dropped = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
-    String serialize() {
-        return String.format("%s!%d:%s:%s",
-                StringPadder.padRight(name, MAX_NAME_LENGTH),
-                fields.size(),
-                StringPadder.padRight(keyField, MAX_FIELD_NAME_LENGTH),
-                getSerializedFields()
-        );
+    private void indexPage(Page page, ArrayList<SecondaryIndex> secondaryIndexes) throws IOException {
+        for (int slot = 0; slot < page.getSize(); slot++) {
+            Record record = page.getRecord(slot);
+            if (record == null) continue;
+            // a compaction that crashed after writing the moved copy but not the emptied page leaves
+            // the record twice; pages are indexed in id order, so the copy on the lower page is kept
+            if (primaryIndex.containsKey(record.getKeyValue())) {
+                Logger.info("Dropping duplicate of '%s' on Page #%d", record.getKeyValue(), page.getId());
+                page.deleteRecord(slot);
+                logPageImage(page);
+                continue;
+            }
+            primaryIndex.put(record.getKeyValue(), new RecordId(page.getId(), slot));
+            for (SecondaryIndex index : secondaryIndexes) {
+                index.add(record);
+            }
+        }
     }
 
-    private String getSerializedFields() {
-        return fields.stream()
-                .map(f -> StringPadder.padRight(f, MAX_FIELD_NAME_LENGTH))
-                .collect(Collectors.joining(","));
+    void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (bufferPool != null) {
+                bufferPool.flushPages(this);
+                bufferPool.dropPages(this);
+            }
+            if (freeSpaceMap != null) freeSpaceMap.save();
+            for (SecondaryIndex index : secondaryIndexes.values()) {
+                index.save();
+            }
+            if (keyTree != null) {
+                keyTree.close();
+                keyTree = null;
+            }
+            versions.clear();
+            loaded = false;
+            if (typeFile == null) return;
+            typeFile.close();
+            typeFile = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     String getFilename() {
-        return String.format("%s.type.txt", name.toLowerCase());
+        return String.format("%s.type.dat", name.toLowerCase());
+    }
+
+    String getFreeSpaceMapFilename() {
+        return String.format("%s.fsm", name.toLowerCase());
+    }
+
+    String getIndexFilename(int fieldIndex) {
+        if (fieldIndex == keyFieldIndex) return String.format("%s.bpt", name.toLowerCase());
+        return String.format("%s.%s.idx", name.toLowerCase(), fields.get(fieldIndex).toLowerCase());
+    }
+
+    ArrayList<String> getIndexFilenames() {
+        ArrayList<String> filenames = new ArrayList<>();
+        for (int fieldIndex = 0; fieldIndex < fields.size(); fieldIndex++) {
+            if ((indexMask & (1 << fieldIndex)) != 0) filenames.add(getIndexFilename(fieldIndex));
+        }
+        return filenames;
     }
 
     boolean isNamed(String name) {
@@ -231,6 +1434,20 @@ class Type {
         return fields;
     }
 
+    int getFieldCount() {
+        return fields.size();
+    }
+
+    // returns -1 when the type has no such field
+    int getFieldIndex(String field) {
+        Integer index = fieldIndexes.get(field);
+        return index == null ? -1 : index;
+    }
+
+    int getKeyFieldIndex() {
+        return keyFieldIndex;
+    }
+
     public String getName() {
         return name;
     }
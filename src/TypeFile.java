@@ -0,0 +1,121 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+class TypeFile {
+    private static final int MAGIC = 0x44544e4b;
+    private static final int VERSION = 1;
+    // magic, version, page size, field count
+    static final int HEADER_SIZE = 4 * Integer.BYTES;
+    private String filename;
+    private int pageSize;
+    private FileChannel channel;
+
+    TypeFile(String filename, int pageSize, int fieldCount) throws IOException {
+        this.filename = filename;
+        this.pageSize = pageSize;
+        this.channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        if (channel.size() == 0) {
+            writeHeader(fieldCount);
+        } else {
+            checkHeader(fieldCount);
+        }
+    }
+
+    private void writeHeader(int fieldCount) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(pageSize).putInt(fieldCount);
+        header.flip();
+        writeFully(header, 0);
+    }
+
+    private void checkHeader(int fieldCount) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        header.flip();
+
+        if (header.getInt() != MAGIC) {
+            throw new IOException(String.format("'%s' is not a type file", filename));
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException(String.format("'%s' has unsupported format version %d", filename, version));
+        }
+        if (header.getInt() != pageSize || header.getInt() != fieldCount) {
+            throw new IOException(String.format("'%s' does not match its type definition", filename));
+        }
+    }
+
+    int getPageCount() throws IOException {
+        return (int) ((channel.size() - HEADER_SIZE) / pageSize);
+    }
+
+    ByteBuffer readPage(int id) throws IOException {
+        if (id < 1 || id > getPageCount()) return null;
+
+        ByteBuffer page = ByteBuffer.allocate(pageSize);
+        readFully(page, getOffset(id));
+        page.flip();
+        return page;
+    }
+
+    ByteBuffer getPageBuffer(int id) throws IOException {
+        return ByteBuffer.allocate(pageSize);
+    }
+
+    // expects the buffer returned by getPageBuffer for the same id
+    void writePage(int id, ByteBuffer page) throws IOException {
+        writeFully(page, getOffset(id));
+    }
+
+    // drops every page after the given count
+    void truncate(int pageCount) throws IOException {
+        channel.truncate(getOffset(pageCount + 1));
+    }
+
+    long getSize() throws IOException {
+        return channel.size();
+    }
+
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) throw new IOException(String.format("Unexpected end of '%s'", filename));
+            position += read;
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    long getOffset(int id) {
+        return HEADER_SIZE + (long) (id - 1) * pageSize;
+    }
+
+    String getFilename() {
+        return filename;
+    }
+
+    int getPageSize() {
+        return pageSize;
+    }
+
+    FileChannel getChannel() {
+        return channel;
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+}
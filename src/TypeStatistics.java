@@ -0,0 +1,92 @@
+import java.nio.ByteBuffer;
+
+class TypeStatistics {
+    // record count, page count, free slots, bytes on disk, last modified
+    static final int ENCODED_LENGTH = Long.BYTES + Integer.BYTES + 3 * Long.BYTES;
+    private long recordCount;
+    private int pageCount;
+    private long freeSlots;
+    private long bytesOnDisk;
+    private long lastModified;
+
+    static TypeStatistics createFromBuffer(ByteBuffer buffer) {
+        TypeStatistics statistics = new TypeStatistics();
+        statistics.recordCount = buffer.getLong();
+        statistics.pageCount = buffer.getInt();
+        statistics.freeSlots = buffer.getLong();
+        statistics.bytesOnDisk = buffer.getLong();
+        statistics.lastModified = buffer.getLong();
+        return statistics;
+    }
+
+    void writeTo(ByteBuffer buffer) {
+        buffer.putLong(recordCount);
+        buffer.putInt(pageCount);
+        buffer.putLong(freeSlots);
+        buffer.putLong(bytesOnDisk);
+        buffer.putLong(lastModified);
+    }
+
+    void recordAdded() {
+        recordCount++;
+        freeSlots--;
+        lastModified = System.currentTimeMillis();
+    }
+
+    void recordRemoved() {
+        recordCount--;
+        freeSlots++;
+        lastModified = System.currentTimeMillis();
+    }
+
+    void recordUpdated() {
+        lastModified = System.currentTimeMillis();
+    }
+
+    void pageAdded(int capacity, int pageSize) {
+        pageCount++;
+        freeSlots += capacity;
+        bytesOnDisk += pageSize;
+    }
+
+    void pageRemoved(int capacity, int pageSize) {
+        pageCount--;
+        freeSlots -= capacity;
+        bytesOnDisk -= pageSize;
+        lastModified = System.currentTimeMillis();
+    }
+
+    void reset(long recordCount, int pageCount, long freeSlots, long bytesOnDisk) {
+        this.recordCount = recordCount;
+        this.pageCount = pageCount;
+        this.freeSlots = freeSlots;
+        this.bytesOnDisk = bytesOnDisk;
+    }
+
+    TypeStatistics copy() {
+        TypeStatistics copy = new TypeStatistics();
+        copy.reset(recordCount, pageCount, freeSlots, bytesOnDisk);
+        copy.lastModified = lastModified;
+        return copy;
+    }
+
+    long getRecordCount() {
+        return recordCount;
+    }
+
+    int getPageCount() {
+        return pageCount;
+    }
+
+    long getFreeSlots() {
+        return freeSlots;
+    }
+
+    long getBytesOnDisk() {
+        return bytesOnDisk;
+    }
+
+    long getLastModified() {
+        return lastModified;
+    }
+}
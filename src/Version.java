@@ -0,0 +1,53 @@
+// One committed state of a record, stamped with the timestamp of the change that produced it: the record,
+// or null when the change deleted it. Each version links to the state it replaced, so a chain holds the
+// newest version first and a snapshot reads the first one stamped at or before it.
+class Version {
+    private final long timestamp;
+    private final Record record;
+    private Version previous;
+
+    Version(long timestamp, Record record, Version previous) {
+        this.timestamp = timestamp;
+        this.record = record;
+        this.previous = previous;
+    }
+
+    long getTimestamp() {
+        return timestamp;
+    }
+
+    // null when the record did not exist in this version
+    Record getRecord() {
+        return record;
+    }
+
+    // the newest version in the chain that the snapshot sees, or null when the chain does not reach back to it
+    Version find(long snapshot) {
+        for (Version version = this; version != null; version = version.previous) {
+            if (version.timestamp <= snapshot) return version;
+        }
+        return null;
+    }
+
+    // cuts the chain after the newest version the snapshot sees, as no later snapshot can see the older ones;
+    // returns the number of versions dropped
+    int prune(long snapshot) {
+        Version visible = find(snapshot);
+        if (visible == null) return 0;
+
+        int dropped = 0;
+        for (Version version = visible.previous; version != null; version = version.previous) {
+            dropped++;
+        }
+        visible.previous = null;
+        return dropped;
+    }
+
+    int getLength() {
+        int length = 0;
+        for (Version version = this; version != null; version = version.previous) {
+            length++;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,166 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+class WriteAheadLog {
+    // body length, body checksum
+    private static final int FRAME_HEADER_SIZE = 2 * Integer.BYTES;
+    private String filename;
+    private FileChannel channel;
+    // frames appended since the last flush, written out by the next group commit
+    private ByteArrayOutputStream pending;
+    private long writePosition;
+    private long nextLsn;
+    private long flushedLsn;
+    // counts the truncations, so a page knows whether the log still holds an image of it
+    private long epoch;
+    private boolean flushing;
+    private IOException failure;
+    private long appendCount;
+    private long syncCount;
+
+    WriteAheadLog(String filename) throws IOException {
+        this.filename = filename;
+        this.channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.pending = new ByteArrayOutputStream();
+        this.writePosition = channel.size();
+        this.nextLsn = 1;
+    }
+
+    synchronized ArrayList<LogRecord> readRecords() throws IOException {
+        ArrayList<LogRecord> records = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(Paths.get(filename)));
+
+        while (buffer.remaining() >= FRAME_HEADER_SIZE) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                buffer.position(start);
+                break;
+            }
+
+            byte[] body = new byte[length];
+            buffer.get(body);
+            if (computeChecksum(body) != checksum) {
+                buffer.position(start);
+                break;
+            }
+            records.add(LogRecord.createFromSerialized(body));
+        }
+
+        // drop a frame torn by a crash so new records are appended after the last complete one
+        writePosition = buffer.position();
+        channel.truncate(writePosition);
+        return records;
+    }
+
+    synchronized long append(LogRecord record) throws IOException {
+        byte[] body = record.serialize();
+        ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+        header.putInt(body.length).putInt(computeChecksum(body));
+        pending.write(header.array());
+        pending.write(body);
+        appendCount++;
+        return nextLsn++;
+    }
+
+    void sync(long lsn) throws IOException {
+        byte[] batch;
+        long batchLsn;
+        long position;
+
+        synchronized (this) {
+            while (true) {
+                if (failure != null) throw failure;
+                if (lsn <= flushedLsn) return;
+                if (!flushing) break;
+                waitForFlush();
+            }
+
+            // become the leader and flush everything appended so far on behalf of all waiters
+            flushing = true;
+            batch = pending.toByteArray();
+            batchLsn = nextLsn - 1;
+            position = writePosition;
+            pending.reset();
+            writePosition += batch.length;
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(batch);
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            synchronized (this) {
+                failure = e;
+            }
+            throw e;
+        } finally {
+            synchronized (this) {
+                if (failure == null) flushedLsn = Math.max(flushedLsn, batchLsn);
+                flushing = false;
+                syncCount++;
+                notifyAll();
+            }
+        }
+    }
+
+    private void waitForFlush() throws InterruptedIOException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the log to be flushed");
+        }
+    }
+
+    // callers must have written out every page changed by the records being discarded
+    synchronized void truncate() throws IOException {
+        while (flushing) {
+            waitForFlush();
+        }
+        pending.reset();
+        channel.truncate(0);
+        channel.force(false);
+        writePosition = 0;
+        flushedLsn = nextLsn - 1;
+        epoch++;
+    }
+
+    private static int computeChecksum(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    synchronized long getEpoch() {
+        return epoch;
+    }
+
+    synchronized long getSize() {
+        return writePosition + pending.size();
+    }
+
+    synchronized long getAppendCount() {
+        return appendCount;
+    }
+
+    synchronized long getSyncCount() {
+        return syncCount;
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+}
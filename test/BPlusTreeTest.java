@@ -0,0 +1,86 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BPlusTreeTest extends DatabaseFixture {
+    private static final String FILENAME = "BPlusTreeTest.bpt";
+    // enough leaves for internal nodes to split, and more nodes than the cache holds
+    private static final int KEYS = 40000;
+
+    @Test
+    void rangesCrossLeafBoundariesAfterSplits() throws Exception {
+        BPlusTree tree = createTree();
+        assertEquals(KEYS, tree.getSize());
+        for (int i = 0; i < KEYS; i++) {
+            assertEquals(2 * i, tree.get(key(2 * i)).getPageId());
+        }
+
+        // a bound between two keys starts past the end of a leaf as often as inside one
+        for (int i = 0; i < KEYS - 1; i++) {
+            assertEquals(Collections.singletonList(2 * i + 2), pageIds(tree.range(key(2 * i + 1), key(2 * i + 3), 0)));
+        }
+        assertEquals(BPlusTree.LEAF_ORDER + 1, tree.range(null, null, BPlusTree.LEAF_ORDER + 1).size());
+        assertEquals(KEYS, tree.range(null, null, 0).size());
+        assertTrue(tree.range(key(2 * KEYS), null, 0).isEmpty());
+        tree.close();
+    }
+
+    @Test
+    void removalsSurviveReopening() throws Exception {
+        BPlusTree tree = createTree();
+        for (int i = 0; i < KEYS; i += 3) {
+            tree.remove(key(2 * i));
+        }
+        tree.close();
+
+        tree = BPlusTree.load(FILENAME);
+        assertNotNull(tree);
+        assertEquals(KEYS - (KEYS + 2) / 3, tree.getSize());
+        for (int i = 0; i < KEYS; i++) {
+            RecordId rid = tree.get(key(2 * i));
+            if (i % 3 == 0) {
+                assertNull(rid);
+            } else {
+                assertEquals(2 * i, rid.getPageId());
+            }
+        }
+        List<Integer> all = pageIds(tree.range(null, null, 0));
+        assertEquals(tree.getSize(), all.size());
+        for (int i = 1; i < all.size(); i++) {
+            assertTrue(all.get(i - 1) < all.get(i));
+        }
+
+        // a tree changed after its last save is not trusted
+        tree.put(key(1), new RecordId(1, 0));
+        assertNull(BPlusTree.load(FILENAME));
+        tree.close();
+    }
+
+    // every even key in a random order, with the key as its page id
+    private static BPlusTree createTree() throws Exception {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < KEYS; i++) {
+            order.add(2 * i);
+        }
+        Collections.shuffle(order, new Random(42));
+
+        BPlusTree tree = BPlusTree.create(FILENAME);
+        for (int i : order) {
+            tree.put(key(i), new RecordId(i, 0));
+        }
+        return tree;
+    }
+
+    private static List<Integer> pageIds(List<RecordId> rids) {
+        List<Integer> pageIds = new ArrayList<>();
+        for (RecordId rid : rids) {
+            pageIds.add(rid.getPageId());
+        }
+        return pageIds;
+    }
+}
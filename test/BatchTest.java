@@ -0,0 +1,110 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchTest extends DatabaseFixture {
+    private static final String TYPE_NAME = "batched";
+    private static final int RECORDS = 100;
+    private Database db;
+
+    @BeforeEach
+    void createRecords() throws Exception {
+        db = openDatabase();
+        db.createType(TYPE_NAME, new ArrayList<>(Arrays.asList("id", "name")), "id");
+        for (int i = 0; i < RECORDS; i++) {
+            db.createRecord(TYPE_NAME, values("id", key(i), "name", "n" + i));
+        }
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        db.close();
+    }
+
+    @Test
+    void everyRowOfACreateBatchGetsItsStatus() throws Exception {
+        List<Map<String, String>> rows = Arrays.asList(
+                values("id", key(RECORDS), "name", "new"),
+                values("id", key(RECORDS), "name", "again"),
+                values("id", key(0), "name", "taken"),
+                values("name", "nokey"),
+                values("id", "", "name", "emptykey"),
+                values("id", key(RECORDS + 1), "name", "elevenchars"),
+                values("id", key(RECORDS + 2), "name", "last"));
+
+        List<BatchResult.Entry> entries = db.createRecords(TYPE_NAME, rows).getEntries();
+        assertEquals(rows.size(), entries.size());
+        assertEntry(entries.get(0), key(RECORDS), BatchResult.Status.CREATED);
+        assertEntry(entries.get(1), key(RECORDS), BatchResult.Status.DUPLICATE);
+        assertEntry(entries.get(2), key(0), BatchResult.Status.DUPLICATE);
+        assertEntry(entries.get(3), null, BatchResult.Status.INVALID);
+        assertEquals("Missing key field 'id'", entries.get(3).getMessage());
+        assertEntry(entries.get(4), null, BatchResult.Status.INVALID);
+        assertEquals("Missing key field 'id'", entries.get(4).getMessage());
+        assertEntry(entries.get(5), key(RECORDS + 1), BatchResult.Status.INVALID);
+        assertEntry(entries.get(6), key(RECORDS + 2), BatchResult.Status.CREATED);
+
+        assertEquals("new", db.getRecord(TYPE_NAME, key(RECORDS)).getValue(1));
+        assertEquals("n0", db.getRecord(TYPE_NAME, key(0)).getValue(1));
+        assertNull(db.getRecord(TYPE_NAME, key(RECORDS + 1)));
+        assertNull(db.getRecord(TYPE_NAME, ""));
+        assertEquals(RECORDS + 2, db.getRecordsByType(TYPE_NAME).size());
+    }
+
+    @Test
+    void everyKeyOfADeleteBatchGetsItsStatus() throws Exception {
+        List<BatchResult.Entry> entries = db.deleteRecords(TYPE_NAME,
+                Arrays.asList(key(1), "missing", key(1), key(2))).getEntries();
+        assertEquals(4, entries.size());
+        assertEntry(entries.get(0), key(1), BatchResult.Status.DELETED);
+        assertEntry(entries.get(1), "missing", BatchResult.Status.NOT_FOUND);
+        assertEntry(entries.get(2), key(1), BatchResult.Status.NOT_FOUND);
+        assertEntry(entries.get(3), key(2), BatchResult.Status.DELETED);
+        assertEquals(RECORDS - 2, db.getRecordsByType(TYPE_NAME).size());
+    }
+
+    @Test
+    void aBatchWaitsForASingleSync() throws Exception {
+        List<Map<String, String>> rows = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        for (int i = RECORDS; i < 2 * RECORDS; i++) {
+            rows.add(values("id", key(i), "name", "n" + i));
+            keys.add(key(i - RECORDS));
+        }
+
+        long appends = db.getMetrics().get("log.appends");
+        long syncs = db.getMetrics().get("log.syncs");
+        assertEquals(RECORDS, db.createRecords(TYPE_NAME, rows).count(BatchResult.Status.CREATED));
+        assertTrue(db.getMetrics().get("log.appends") >= appends + RECORDS);
+        assertEquals(syncs + 1, db.getMetrics().get("log.syncs"));
+
+        assertEquals(RECORDS, db.deleteRecords(TYPE_NAME, keys).count(BatchResult.Status.DELETED));
+        assertEquals(syncs + 2, db.getMetrics().get("log.syncs"));
+    }
+
+    @Test
+    void aRecordWithoutAKeyIsRejectedBeforeItIsLogged() throws Exception {
+        long appends = db.getMetrics().get("log.appends");
+        for (HashMap<String, String> values : Arrays.asList(values("name", "n"), values("id", "", "name", "n"))) {
+            assertThrows(InvalidRecordException.class, () -> db.createRecord(TYPE_NAME, values));
+            try (Transaction transaction = db.begin()) {
+                assertThrows(InvalidRecordException.class, () -> transaction.createRecord(TYPE_NAME, values));
+            }
+        }
+        assertEquals(appends, db.getMetrics().get("log.appends"));
+        assertEquals(RECORDS, db.getRecordsByType(TYPE_NAME).size());
+    }
+
+    private static void assertEntry(BatchResult.Entry entry, String key, BatchResult.Status status) {
+        assertEquals(key, entry.getKey());
+        assertEquals(status, entry.getStatus());
+    }
+}
@@ -0,0 +1,80 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkLoadTest extends DatabaseFixture {
+    private static final String TYPE_NAME = "loaded";
+    private Database db;
+
+    @BeforeEach
+    void createType() throws Exception {
+        db = openDatabase();
+        db.createType(TYPE_NAME, new ArrayList<>(Arrays.asList("id", "name")), "id");
+        db.createRecord(TYPE_NAME, values("id", "taken", "name", "before"));
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        db.close();
+    }
+
+    @Test
+    void invalidRowsAreRejectedAndTheRestLoaded() throws Exception {
+        Path csv = write(
+                "name,id",
+                "a,1",
+                "\"b, quoted\",2",
+                "",
+                "c",
+                "d,3,extra",
+                "elevenchars,4",
+                "f,",
+                "g,taken",
+                "h,1",
+                "i,5");
+
+        LoadResult result = db.bulkLoad(TYPE_NAME, csv);
+        assertEquals(3, result.getLoadedCount());
+        assertEquals(6, result.getRejectedCount());
+        assertEquals(Arrays.asList(
+                "Line 5: Expected 2 values, found 1",
+                "Line 6: Expected 2 values, found 3",
+                "Line 7: Value of 'name' is longer than 10 chars",
+                "Line 8: Missing key",
+                "Line 9: Duplicate key 'taken'",
+                "Line 10: Duplicate key '1'"), result.getErrors());
+
+        assertEquals("a", db.getRecord(TYPE_NAME, "1").getValue(1));
+        assertEquals("b, quoted", db.getRecord(TYPE_NAME, "2").getValue(1));
+        assertEquals("before", db.getRecord(TYPE_NAME, "taken").getValue(1));
+        assertNull(db.getRecord(TYPE_NAME, "3"));
+        db.close();
+
+        db = openDatabase();
+        assertEquals(4, db.getRecordsByType(TYPE_NAME).size());
+        assertEquals("i", db.getRecord(TYPE_NAME, "5").getValue(1));
+        assertEquals(4, db.getStatistics(TYPE_NAME).getRecordCount());
+    }
+
+    @Test
+    void anInvalidHeaderRejectsTheWholeFile() throws Exception {
+        assertThrows(InvalidRecordException.class, () -> db.bulkLoad(TYPE_NAME, write()));
+        assertThrows(InvalidRecordException.class, () -> db.bulkLoad(TYPE_NAME, write("id,color", "1,red")));
+        assertThrows(InvalidRecordException.class, () -> db.bulkLoad(TYPE_NAME, write("name", "a")));
+        assertThrows(InvalidRecordException.class, () -> db.bulkLoad(TYPE_NAME, write("id,name,id", "1,a,1")));
+        assertEquals(1, db.getRecordsByType(TYPE_NAME).size());
+    }
+
+    private Path write(String... lines) throws Exception {
+        Path csv = Files.createTempFile(temporaryDirectory, TYPE_NAME, ".csv");
+        Files.write(csv, Arrays.asList(lines));
+        return csv;
+    }
+}
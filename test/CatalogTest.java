@@ -1,5 +1,72 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
 import static org.junit.jupiter.api.Assertions.*;
 
-class CatalogTest {
+class CatalogTest extends DatabaseFixture {
+    private static final String CATALOG_FILENAME = DATABASE_NAME + ".catalog.dat";
+
+    @Test
+    void typesSurviveReopening() throws Exception {
+        Database db = openDatabase();
+        db.createType("first", new ArrayList<>(Arrays.asList("id", "name")), "id");
+        db.createType("second", new ArrayList<>(Arrays.asList("id")), "id");
+        db.checkpoint();
+        db.close();
+        assertFalse(new File(CATALOG_FILENAME + ".tmp").exists());
+
+        db = openDatabase();
+        assertEquals(2, db.getTypes().size());
+        assertEquals(Arrays.asList("id", "name"), db.getType("first").getFields());
+        db.close();
+    }
+
+    @Test
+    void aCatalogEndingInAPartialEntryIsRejected() throws Exception {
+        Database db = openDatabase();
+        db.createType("first", new ArrayList<>(Arrays.asList("id", "name")), "id");
+        db.createType("second", new ArrayList<>(Arrays.asList("id")), "id");
+        db.close();
+
+        try (RandomAccessFile catalog = new RandomAccessFile(CATALOG_FILENAME, "rw")) {
+            catalog.setLength(catalog.length() - 10);
+        }
+        assertThrows(InvalidTypeException.class, () -> openDatabase());
+    }
+
+    @Test
+    void updatesMoveTheTimeOfTheLastChange() throws Exception {
+        Database db = openDatabase();
+        db.createType("first", new ArrayList<>(Arrays.asList("id", "name")), "id");
+        db.createRecord("first", values("id", "1", "name", "a"));
+        long created = db.getStatistics("first").getLastModified();
+
+        long updated = waitForTheClock(created);
+        db.updateRecord("first", "1", Collections.singletonMap("name", "b"));
+        assertTrue(db.getStatistics("first").getLastModified() >= updated);
+
+        long committed = waitForTheClock(updated);
+        try (Transaction transaction = db.begin()) {
+            transaction.updateRecord("first", "1", Collections.singletonMap("name", "c"));
+            transaction.commit();
+        }
+        assertTrue(db.getStatistics("first").getLastModified() >= committed);
+        db.close();
+
+        db = openDatabase();
+        assertTrue(db.getStatistics("first").getLastModified() >= committed);
+        db.close();
+    }
 
-}
\ No newline at end of file
+    private static long waitForTheClock(long time) throws InterruptedException {
+        while (System.currentTimeMillis() <= time) {
+            Thread.sleep(1);
+        }
+        return System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,61 @@
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactionTest extends DatabaseFixture {
+    private static final String TYPE_NAME = "compacted";
+    // enough pages for a mapped file to give back whole chunks
+    private static final int RECORDS = 3 * MappedTypeFile.CHUNK_PAGES * Page.getCapacity();
+
+    @ParameterizedTest
+    @EnumSource(StorageMode.class)
+    void compactionShrinksTheFileByWhatItReports(StorageMode storageMode) throws Exception {
+        Database db = new Database(DATABASE_NAME, 64, storageMode);
+        db.createType(TYPE_NAME, new ArrayList<>(Arrays.asList("id", "color")), "id");
+        db.createIndex(TYPE_NAME, "color");
+        db.createIndex(TYPE_NAME, "id");
+        List<Map<String, String>> rows = new ArrayList<>();
+        for (int i = 0; i < RECORDS; i++) {
+            rows.add(values("id", key(i), "color", "c" + i % 5));
+        }
+        db.createRecords(TYPE_NAME, rows);
+        // keeps every fourth record, spread over all the pages
+        List<String> deleted = new ArrayList<>();
+        for (int i = 0; i < RECORDS; i++) {
+            if (i % 4 != 0) deleted.add(key(i));
+        }
+        db.deleteRecords(TYPE_NAME, deleted);
+        db.checkpoint();
+
+        long before = new File(TYPE_NAME + ".type.dat").length();
+        long reclaimed = db.compact(TYPE_NAME);
+        long after = new File(TYPE_NAME + ".type.dat").length();
+        assertTrue(reclaimed > 0);
+        assertEquals(before - after, reclaimed);
+        assertEquals(reclaimed, db.getMetrics().get("compaction.bytesReclaimed"));
+
+        TypeStatistics statistics = db.getStatistics(TYPE_NAME);
+        assertEquals(RECORDS / 4, statistics.getRecordCount());
+        assertEquals(RECORDS / 4 / Page.getCapacity(), statistics.getPageCount());
+        assertEquals(0, statistics.getFreeSlots());
+        assertEquals(0, db.compact(TYPE_NAME));
+        db.close();
+
+        db = new Database(DATABASE_NAME, 64, storageMode);
+        assertEquals(RECORDS / 4, db.getRecordsByType(TYPE_NAME).size());
+        assertEquals(RECORDS / 4 / 5, db.findRecords(TYPE_NAME, "color", "c0").size());
+        assertEquals(RECORDS / 4, db.rangeScan(TYPE_NAME, null, null, 0).size());
+        assertEquals(RECORDS / 4 / Page.getCapacity(), db.getStatistics(TYPE_NAME).getPageCount());
+        db.createRecord(TYPE_NAME, values("id", key(1), "color", "c1"));
+        assertNotNull(db.getRecord(TYPE_NAME, key(1)));
+        assertEquals(RECORDS / 4 / Page.getCapacity() + 1, db.getStatistics(TYPE_NAME).getPageCount());
+        db.close();
+    }
+}
@@ -0,0 +1,114 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatabaseConcurrencyTest extends DatabaseFixture {
+    private static final String TYPE_NAME = "stress";
+    private static final int WRITERS = 8;
+    private static final int RECORDS_PER_WRITER = 400;
+
+    @Test
+    void concurrentWritersDoNotLoseUpdates() throws Exception {
+        Database db = openDatabase();
+        db.createType(TYPE_NAME, new ArrayList<>(Arrays.asList("id", "writer")), "id");
+
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + 2);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            int writer = w;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < RECORDS_PER_WRITER; i++) {
+                    db.createRecord(TYPE_NAME, values("id", key(writer, i), "writer", String.valueOf(writer)));
+                    // every writer removes every fourth record it created
+                    if (i % 4 == 0) db.deleteRecord(TYPE_NAME, key(writer, i));
+                }
+                return null;
+            }));
+        }
+        for (int r = 0; r < 2; r++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 50; i++) {
+                    db.getRecordsByType(TYPE_NAME);
+                    db.getRecord(TYPE_NAME, key(0, i));
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        int expected = WRITERS * (RECORDS_PER_WRITER - RECORDS_PER_WRITER / 4);
+        assertRecords(db, expected);
+        db.close();
+
+        Database reopened = openDatabase();
+        assertRecords(reopened, expected);
+        reopened.close();
+    }
+
+    @Test
+    void typeDdlRunsAlongsideRecordWrites() throws Exception {
+        Database db = openDatabase();
+        db.createType(TYPE_NAME, new ArrayList<>(Arrays.asList("id", "writer")), "id");
+
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + 1);
+        List<Future<?>> futures = new ArrayList<>();
+        futures.add(executor.submit(() -> {
+            for (int i = 0; i < RECORDS_PER_WRITER; i++) {
+                db.createRecord(TYPE_NAME, values("id", key(0, i), "writer", "0"));
+            }
+            return null;
+        }));
+        for (int w = 0; w < WRITERS; w++) {
+            String typeName = String.format("ddl%d", w);
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 10; i++) {
+                    db.createType(typeName, new ArrayList<>(Collections.singletonList("id")), "id");
+                    db.createRecord(typeName, values("id", String.valueOf(i)));
+                    db.deleteType(typeName);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        assertEquals(1, db.getTypes().size());
+        assertEquals(RECORDS_PER_WRITER, db.getRecordsByType(TYPE_NAME).size());
+        db.close();
+    }
+
+    private void assertRecords(Database db, int expected) throws Exception {
+        assertEquals(expected, db.getRecordsByType(TYPE_NAME).size());
+        for (int w = 0; w < WRITERS; w++) {
+            for (int i = 0; i < RECORDS_PER_WRITER; i++) {
+                Record record = db.getRecord(TYPE_NAME, key(w, i));
+                if (i % 4 == 0) {
+                    assertNull(record, key(w, i));
+                } else {
+                    assertNotNull(record, key(w, i));
+                    assertEquals(String.valueOf(w), record.getValueOf("writer"));
+                }
+            }
+        }
+    }
+
+    private static String key(int writer, int i) {
+        return String.format("%d-%d", writer, i);
+    }
+}
@@ -0,0 +1,91 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Setup and cleanup shared by the tests that leave files in the working directory. Every file a test
+ * creates there is deleted after it, whatever part of the engine wrote it, so a test keeps no list of
+ * filenames. A subclass's own {@code @AfterEach} methods run before the files are deleted.
+ */
+abstract class DatabaseFixture {
+    static final String DATABASE_NAME = "test";
+    private static final Path WORKING_DIRECTORY = Paths.get("");
+    private Set<Path> existing;
+
+    @TempDir
+    Path temporaryDirectory;
+
+    @BeforeEach
+    void listExistingFiles() throws IOException {
+        existing = listFiles();
+    }
+
+    @AfterEach
+    void deleteCreatedFiles() throws IOException {
+        for (Path path : createdFiles()) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    Database openDatabase() throws Exception {
+        return new Database(DATABASE_NAME, 16);
+    }
+
+    // leaves the files as they were on disk before close, as a crash would
+    void crash(Database db) throws Exception {
+        Path crashed = Files.createTempDirectory(temporaryDirectory, "crashed");
+        for (Path path : createdFiles()) {
+            Files.copy(path, crashed.resolve(path.getFileName()));
+        }
+        db.close();
+        for (Path path : createdFiles()) {
+            Path copy = crashed.resolve(path.getFileName());
+            if (Files.exists(copy)) {
+                Files.copy(copy, path, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.delete(path);
+            }
+        }
+    }
+
+    static String key(int i) {
+        return String.format("%05d", i);
+    }
+
+    // alternating field names and values
+    static HashMap<String, String> values(String... fieldsAndValues) {
+        HashMap<String, String> values = new HashMap<>();
+        for (int i = 0; i < fieldsAndValues.length; i += 2) {
+            values.put(fieldsAndValues[i], fieldsAndValues[i + 1]);
+        }
+        return values;
+    }
+
+    private List<Path> createdFiles() throws IOException {
+        List<Path> created = new ArrayList<>();
+        for (Path path : listFiles()) {
+            if (!existing.contains(path)) created.add(path);
+        }
+        return created;
+    }
+
+    private static Set<Path> listFiles() throws IOException {
+        try (Stream<Path> paths = Files.list(WORKING_DIRECTORY.toAbsolutePath())) {
+            Set<Path> files = new HashSet<>();
+            paths.filter(Files::isRegularFile).forEach(files::add);
+            return files;
+        }
+    }
+}
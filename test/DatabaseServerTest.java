@@ -0,0 +1,115 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatabaseServerTest extends DatabaseFixture {
+    private static final String TYPE_NAME = "remote";
+    private static final int RECORDS = 1000;
+    private Database db;
+    private DatabaseServer server;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        db = openDatabase();
+        server = new DatabaseServer(db, 0);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() throws Exception {
+        server.close();
+        db.close();
+    }
+
+    @Test
+    void pipelinedRequestsAreAnsweredInOrder() throws Exception {
+        try (DatabaseClient client = new DatabaseClient("localhost", server.getPort())) {
+            client.createType(TYPE_NAME, Arrays.asList("id", "color"), "id");
+
+            DatabaseClient.Pipeline creates = client.pipeline();
+            for (int i = 0; i < RECORDS; i++) {
+                creates.createRecord(TYPE_NAME, values(i));
+            }
+            assertEquals(RECORDS, creates.execute().size());
+
+            DatabaseClient.Pipeline gets = client.pipeline();
+            for (int i = 0; i < RECORDS; i++) {
+                gets.getRecord(TYPE_NAME, key(i));
+            }
+            gets.getRecord(TYPE_NAME, "missing");
+            List<Object> results = gets.execute();
+            for (int i = 0; i < RECORDS; i++) {
+                assertEquals(values(i), results.get(i));
+            }
+            assertNull(results.get(RECORDS));
+
+            client.deleteRecord(TYPE_NAME, key(0));
+            assertNull(client.getRecord(TYPE_NAME, key(0)));
+            assertEquals(RECORDS - 1, client.getRecords(TYPE_NAME).size());
+            assertEquals(RECORDS / 3, client.findRecords(TYPE_NAME, "color", "c1").size());
+            List<String[]> rows = client.query(TYPE_NAME, Collections.singletonList(new String[]{"id", "<", key(10)}),
+                    Collections.singletonList("id"), 0);
+            assertEquals(9, rows.size());
+        }
+        assertEquals(RECORDS - 1, db.getRecordsByType(TYPE_NAME).size());
+    }
+
+    @Test
+    void failedRequestsKeepTheConnectionUsable() throws Exception {
+        try (DatabaseClient client = new DatabaseClient("localhost", server.getPort())) {
+            assertThrows(DatabaseClient.ServerException.class, () -> client.getRecord("nosuch", "1"));
+
+            client.createType(TYPE_NAME, Arrays.asList("id", "color"), "id");
+            DatabaseClient.Pipeline pipeline = client.pipeline()
+                    .createRecord(TYPE_NAME, values(1))
+                    .createRecord("nosuch", values(2))
+                    .getRecord(TYPE_NAME, key(1));
+            assertThrows(DatabaseClient.ServerException.class, pipeline::execute);
+            assertEquals(values(1), client.getRecord(TYPE_NAME, key(1)));
+        }
+    }
+
+    @Test
+    void aResponseTooLongForOneFrameIsAnsweredWithAnError() throws Exception {
+        // every record encodes to more than 120 bytes, so all of them do not fit into a frame
+        int records = Protocol.MAX_FRAME_LENGTH / 110;
+        List<String> fields = new ArrayList<>(Arrays.asList("id", "color"));
+        for (int i = fields.size(); i < 8; i++) {
+            fields.add(String.format("f%02d", i));
+        }
+        List<String> lines = new ArrayList<>();
+        lines.add(String.join(",", fields));
+        String filler = String.join("", Collections.nCopies(fields.size() - 2, ",0123456789"));
+        for (int i = 0; i < records; i++) {
+            lines.add(key(i) + ",c" + filler);
+        }
+        Path csv = temporaryDirectory.resolve(TYPE_NAME + ".csv");
+        Files.write(csv, lines);
+
+        try (DatabaseClient client = new DatabaseClient("localhost", server.getPort())) {
+            client.createType(TYPE_NAME, fields, "id");
+            assertEquals(records, db.bulkLoad(TYPE_NAME, csv).getLoadedCount());
+
+            assertThrows(DatabaseClient.ServerException.class, () -> client.getRecords(TYPE_NAME));
+            assertThrows(DatabaseClient.ServerException.class, () -> client.findRecords(TYPE_NAME, "color", "c"));
+            assertThrows(DatabaseClient.ServerException.class, () -> client.rangeScan(TYPE_NAME, null, null, 0));
+            // fewer records still come back on the same connection
+            assertEquals(1000, client.rangeScan(TYPE_NAME, null, null, 1000).size());
+            assertEquals("0123456789", client.getRecord(TYPE_NAME, key(1)).get("f07"));
+        }
+    }
+
+    private static HashMap<String, String> values(int i) {
+        return values("id", key(i), "color", "c" + i % 3);
+    }
+}
@@ -0,0 +1,83 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExportTest extends DatabaseFixture {
+    private static final String TYPE_NAME = "exported";
+    private static final String COPY_NAME = "reloaded";
+    private static final int RECORDS = 300;
+    private Database db;
+
+    @BeforeEach
+    void createRecords() throws Exception {
+        db = openDatabase();
+        db.createType(TYPE_NAME, new ArrayList<>(Arrays.asList("id", "name", "note")), "id");
+        db.createType(COPY_NAME, new ArrayList<>(Arrays.asList("id", "name", "note")), "id");
+        for (int i = 0; i < RECORDS; i++) {
+            // values the CSV has to quote
+            String note = i % 2 == 0 ? "a, \"b\"" : "";
+            db.createRecord(TYPE_NAME, values("id", key(i), "name", "n" + i, "note", note));
+        }
+        for (int i = 0; i < RECORDS; i += 7) {
+            db.deleteRecord(TYPE_NAME, key(i));
+        }
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        db.close();
+    }
+
+    @Test
+    void aCsvExportLoadsIntoATypeWithTheSameFields() throws Exception {
+        Path csv = temporaryDirectory.resolve(TYPE_NAME + ".csv");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = db.export(TYPE_NAME, out, ExportFormat.CSV);
+        assertEquals(out.size(), written);
+        Files.write(csv, out.toByteArray());
+
+        LoadResult result = db.bulkLoad(COPY_NAME, csv);
+        assertEquals(0, result.getRejectedCount());
+        assertSameRecords();
+    }
+
+    @Test
+    void aBinaryExportStandsInForTheFileOfATypeWithTheSameFields() throws Exception {
+        Path copy = temporaryDirectory.resolve(TYPE_NAME + ".type.dat");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = db.export(TYPE_NAME, out, ExportFormat.BINARY);
+        assertEquals(new File(TYPE_NAME + ".type.dat").length(), written);
+        Files.write(copy, out.toByteArray());
+        db.close();
+
+        Files.copy(copy, Paths.get(COPY_NAME + ".type.dat"), StandardCopyOption.REPLACE_EXISTING);
+        db = openDatabase();
+        assertSameRecords();
+    }
+
+    private void assertSameRecords() throws Exception {
+        assertEquals(RECORDS - (RECORDS + 6) / 7, db.getRecordsByType(COPY_NAME).size());
+        for (int i = 0; i < RECORDS; i++) {
+            Record record = db.getRecord(COPY_NAME, key(i));
+            if (i % 7 == 0) {
+                assertNull(record);
+                continue;
+            }
+            Record original = db.getRecord(TYPE_NAME, key(i));
+            for (int field = 0; field < 3; field++) {
+                assertEquals(original.getValue(field), record.getValue(field));
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FormatConverterTest extends DatabaseFixture {
+
+    @Test
+    void aTextDatabaseIsConvertedOnItsFirstOpen() throws Exception {
+        // the layout written before the binary format: padded names and values, one page per line
+        Files.write(Paths.get(DATABASE_NAME + ".catalog.txt"), Arrays.asList(
+                "person    !3:id      :id      ,name    ,city    ",
+                "",
+                "tag       !1:label   :label   "));
+        Files.write(Paths.get("person.type.txt"), Arrays.asList(
+                "1       ,20,2 !" + record("1", "Ada", "London") + "|" + record("2", "Grace", "New York"),
+                "",
+                "2       ,20,1 !" + record("3", "Alan", "")));
+
+        Database db = openDatabase();
+        assertTrue(new File(DATABASE_NAME + ".catalog.dat").exists());
+        assertEquals(2, db.getTypes().size());
+        assertEquals(Arrays.asList("id", "name", "city"), db.getType("person").getFields());
+        assertEquals("id", db.getType("person").getKeyField());
+        assertEquals(3, db.getRecordsByType("person").size());
+        assertEquals("New York", db.getRecord("person", "2").getValue(2));
+        assertEquals("", db.getRecord("person", "3").getValue(2));
+        assertEquals(2, db.getStatistics("person").getPageCount());
+        assertEquals(0, db.getRecordsByType("tag").size());
+
+        db.createRecord("person", values("id", "4", "name", "Edsger"));
+        db.close();
+
+        // the text files are still there, but only converted once
+        db = openDatabase();
+        assertEquals(4, db.getRecordsByType("person").size());
+        db.close();
+    }
+
+    @Test
+    void aCatalogLineThatDoesNotParseStopsTheConversion() throws Exception {
+        Files.write(Paths.get(DATABASE_NAME + ".catalog.txt"), Arrays.asList("person    !3:id"));
+        assertThrows(InvalidTypeException.class, () -> openDatabase());
+        assertFalse(new File(DATABASE_NAME + ".catalog.dat").exists());
+    }
+
+    private static String record(String... values) {
+        StringBuilder fields = new StringBuilder();
+        for (String value : values) {
+            if (fields.length() > 0) fields.append(',');
+            fields.append(String.format("%-10s", value));
+        }
+        return String.format("%-2d,%-2d:%s", values.length, fields.length(), fields);
+    }
+}
@@ -0,0 +1,95 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoggerTest {
+    private PrintStream console;
+    private Logger.Level level;
+    private ByteArrayOutputStream output;
+
+    @BeforeEach
+    void captureOutput() {
+        // nothing logged by earlier tests is still on its way to the old stream
+        Logger.flush();
+        console = System.out;
+        level = Logger.getLevel();
+        output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output, true));
+    }
+
+    @AfterEach
+    void restoreOutput() {
+        Logger.flush();
+        System.setOut(console);
+        Logger.setLevel(level);
+    }
+
+    @Test
+    void messagesBelowTheLevelAreNotWritten() {
+        Logger.setLevel(Logger.Level.INFO);
+        Logger.debug("debug %d", 1);
+        Logger.info("info %d", 2);
+        Logger.setLevel(Logger.Level.ERROR);
+        assertFalse(Logger.isEnabled(Logger.Level.INFO));
+        Logger.info("info %d", 3);
+        Logger.error("error %d", 4);
+        Logger.setLevel(Logger.Level.OFF);
+        Logger.error("error %d", 5);
+        Logger.flush();
+
+        String written = output.toString();
+        assertFalse(written.contains("debug 1"));
+        assertTrue(written.contains("info 2"));
+        assertFalse(written.contains("info 3"));
+        assertTrue(written.contains("error 4"));
+        assertFalse(written.contains("error 5"));
+    }
+
+    @Test
+    void messagesThatDoNotFitIntoTheQueueAreDroppedAndCounted() throws Exception {
+        Logger.setLevel(Logger.Level.INFO);
+        // the writer blocks on the first message it prints, so nothing leaves the queue
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) {
+                blocked.countDown();
+                try {
+                    released.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                output.write(bytes, offset, length);
+            }
+        }, true));
+        Logger.info("first");
+        blocked.await();
+
+        long dropped = Logger.getDroppedCount();
+        for (int i = 0; i < Logger.QUEUE_CAPACITY + 10; i++) {
+            Logger.info("message %d", i);
+        }
+        assertEquals(dropped + 10, Logger.getDroppedCount());
+
+        released.countDown();
+        assertTimeoutPreemptively(Duration.ofSeconds(10), Logger::flush);
+        String written = output.toString();
+        assertTrue(written.contains("message " + (Logger.QUEUE_CAPACITY - 1)));
+        assertFalse(written.contains("message " + Logger.QUEUE_CAPACITY));
+        assertTrue(written.contains("WARNING: 10 log messages dropped"));
+    }
+}
@@ -0,0 +1,114 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedTypeFileTest extends DatabaseFixture {
+    private static final String FILENAME = "MappedTypeFileTest.type.dat";
+    private static final String TYPE_NAME = "mapped";
+    private static final int PAGE_SIZE = 64;
+    private static final int FIELD_COUNT = 2;
+    // past the end of the first chunk, so the second one is only partly written
+    private static final int PAGES = MappedTypeFile.CHUNK_PAGES + 10;
+
+    @Test
+    void pagesOnBothSidesOfAChunkBoundarySurviveReopening() throws Exception {
+        MappedTypeFile file = new MappedTypeFile(FILENAME, PAGE_SIZE, FIELD_COUNT);
+        writePages(file);
+        assertEquals(PAGES, file.getPageCount());
+        assertPages(file);
+        file.close();
+        assertEquals(TypeFile.HEADER_SIZE + 2L * MappedTypeFile.CHUNK_PAGES * PAGE_SIZE, new File(FILENAME).length());
+
+        file = new MappedTypeFile(FILENAME, PAGE_SIZE, FIELD_COUNT);
+        assertEquals(PAGES, file.getPageCount());
+        assertPages(file);
+        assertNull(file.readPage(PAGES + 1));
+        file.close();
+    }
+
+    @Test
+    void aMappedFileReopensAsAStandardOneWithZeroFilledTailPages() throws Exception {
+        MappedTypeFile mapped = new MappedTypeFile(FILENAME, PAGE_SIZE, FIELD_COUNT);
+        writePages(mapped);
+        mapped.close();
+
+        TypeFile file = new TypeFile(FILENAME, PAGE_SIZE, FIELD_COUNT);
+        // the rest of the last chunk is there as well, all zeros
+        assertEquals(2 * MappedTypeFile.CHUNK_PAGES, file.getPageCount());
+        assertPages(file);
+        for (int id = PAGES + 1; id <= file.getPageCount(); id++) {
+            ByteBuffer page = file.readPage(id);
+            while (page.hasRemaining()) {
+                assertEquals(0, page.get());
+            }
+        }
+        file.close();
+    }
+
+    @Test
+    void aStandardFileReopensAsAMappedOne() throws Exception {
+        TypeFile file = new TypeFile(FILENAME, PAGE_SIZE, FIELD_COUNT);
+        writePages(file);
+        assertEquals(PAGES, file.getPageCount());
+        file.close();
+
+        MappedTypeFile mapped = new MappedTypeFile(FILENAME, PAGE_SIZE, FIELD_COUNT);
+        assertEquals(PAGES, mapped.getPageCount());
+        assertPages(mapped);
+        mapped.close();
+    }
+
+    // the records come back in either mode, whichever mode wrote them, and a zero filled page is empty
+    @ParameterizedTest
+    @EnumSource(StorageMode.class)
+    void recordsSurviveSwitchingTheStorageMode(StorageMode writtenIn) throws Exception {
+        StorageMode readIn = writtenIn == StorageMode.MAPPED ? StorageMode.STANDARD : StorageMode.MAPPED;
+        int records = PAGES * Page.getCapacity();
+        Database db = new Database(DATABASE_NAME, 16, writtenIn);
+        db.createType(TYPE_NAME, new ArrayList<>(Arrays.asList("id", "name")), "id");
+        for (int i = 0; i < records; i++) {
+            db.createRecord(TYPE_NAME, values("id", key(i), "name", "n" + i));
+        }
+        db.close();
+
+        db = new Database(DATABASE_NAME, 16, readIn);
+        assertEquals(records, db.getRecordsByType(TYPE_NAME).size());
+        assertEquals("n" + (records - 1), db.getRecord(TYPE_NAME, key(records - 1)).getValue(1));
+        db.createRecord(TYPE_NAME, values("id", key(records), "name", "added"));
+        db.close();
+
+        db = new Database(DATABASE_NAME, 16, writtenIn);
+        assertEquals(records + 1, db.getRecordsByType(TYPE_NAME).size());
+        assertEquals("added", db.getRecord(TYPE_NAME, key(records)).getValue(1));
+        db.close();
+    }
+
+    // every page starts with its id and is filled with a byte of its own
+    private static void writePages(TypeFile file) throws Exception {
+        for (int id = 1; id <= PAGES; id++) {
+            ByteBuffer page = file.getPageBuffer(id);
+            page.putInt(id);
+            while (page.position() < PAGE_SIZE) {
+                page.put((byte) id);
+            }
+            page.flip();
+            file.writePage(id, page);
+        }
+    }
+
+    private static void assertPages(TypeFile file) throws Exception {
+        for (int id = 1; id <= PAGES; id++) {
+            ByteBuffer page = file.readPage(id);
+            assertEquals(id, page.getInt(), "page " + id);
+            assertEquals((byte) id, page.get(Integer.BYTES));
+            assertEquals((byte) id, page.get(PAGE_SIZE - 1));
+        }
+    }
+}
@@ -0,0 +1,35 @@
+import org.junit.jupiter.api.Test;
+
+import javax.management.AttributeNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsBeanTest extends DatabaseFixture {
+    private static final String TYPE_NAME = "measured";
+
+    @Test
+    void metricsAreReadableThroughThePlatformServerUntilClose() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("datenbank", "database", ObjectName.quote(DATABASE_NAME));
+        Database db = openDatabase();
+        db.createType(TYPE_NAME, new ArrayList<>(Arrays.asList("id", "name")), "id");
+        db.createRecord(TYPE_NAME, values("id", "1", "name", "a"));
+
+        assertTrue(server.isRegistered(objectName));
+        assertEquals(db.getMetrics().get("log.appends"), server.getAttribute(objectName, "log.appends"));
+        long appends = (Long) server.getAttribute(objectName, "log.appends");
+        db.createRecord(TYPE_NAME, values("id", "2", "name", "b"));
+        assertTrue((Long) server.getAttribute(objectName, "log.appends") > appends);
+        assertThrows(AttributeNotFoundException.class, () -> server.getAttribute(objectName, "nosuch"));
+        assertThrows(ReflectionException.class, () -> server.invoke(objectName, "reset", null, null));
+
+        db.close();
+        assertFalse(server.isRegistered(objectName));
+    }
+}
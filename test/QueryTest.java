@@ -0,0 +1,98 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryTest extends DatabaseFixture {
+    // the same records twice, once with a key tree and an index on color, once without any index
+    private static final String INDEXED = "indexed";
+    private static final String SCANNED = "scanned";
+    private static final int RECORDS = 200;
+    private Database db;
+
+    @BeforeEach
+    void createRecords() throws Exception {
+        db = openDatabase();
+        for (String typeName : Arrays.asList(INDEXED, SCANNED)) {
+            db.createType(typeName, new ArrayList<>(Arrays.asList("id", "color", "size")), "id");
+            for (int i = 0; i < RECORDS; i++) {
+                db.createRecord(typeName, values("id", key(i), "color", "c" + i % 5, "size", String.valueOf(i % 3)));
+            }
+        }
+        db.createIndex(INDEXED, "color");
+        db.createIndex(INDEXED, "id");
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        db.close();
+    }
+
+    @Test
+    void conditionsSelectionAndLimitShapeTheRows() throws Exception {
+        Query query = db.query(SCANNED).where("color", "=", "c1").where("size", "!=", "0").select("size", "id");
+        assertEquals(Arrays.asList("size", "id"), query.getColumns());
+        List<List<String>> rows = rows(query.execute());
+        assertEquals(RECORDS / 5 - RECORDS / 15, rows.size());
+        assertEquals(Arrays.asList("1", key(1)), rows.get(0));
+        for (List<String> row : rows) {
+            assertNotEquals("0", row.get(0));
+        }
+
+        assertEquals(3, db.query(SCANNED).where("color", "=", "c1").limit(3).execute().size());
+        assertEquals(RECORDS, db.query(SCANNED).execute().size());
+        assertEquals(Arrays.asList(key(7), "c2", "1"), rows(db.query(SCANNED).where("id", "=", key(7)).execute()).get(0));
+    }
+
+    @Test
+    void everyWayToFindTheCandidatesGivesTheSameRows() throws Exception {
+        // through the key, the color index, the key tree, and a range mixed with another condition
+        assertSameRows(0, new String[]{"id", "=", key(42)});
+        assertSameRows(0, new String[]{"id", "=", "missing"});
+        assertSameRows(0, new String[]{"color", "=", "c3"}, new String[]{"id", ">=", key(100)});
+        assertSameRows(0, new String[]{"id", ">", key(10)}, new String[]{"id", "<=", key(30)});
+        assertSameRows(0, new String[]{"id", ">=", key(150)}, new String[]{"size", "=", "2"});
+        assertSameRows(0, new String[]{"size", "=", "1"});
+
+        // a range that has to stop at the limit, with strict bounds dropping the keys at both ends
+        assertSameRows(5, new String[]{"id", ">", key(10)}, new String[]{"id", "<", key(14)});
+        assertSameRows(5, new String[]{"id", ">", key(10)}, new String[]{"id", ">=", key(10)});
+        List<List<String>> limited = rows(db.query(INDEXED).where("id", ">", key(10)).limit(5).execute());
+        assertEquals(5, limited.size());
+        assertEquals(key(11), limited.get(0).get(0));
+        assertEquals(key(15), limited.get(4).get(0));
+    }
+
+    @Test
+    void anUnknownFieldIsRejected() {
+        assertThrows(InvalidTypeException.class, () -> db.query(INDEXED).where("nosuch", "=", "1").execute());
+        assertThrows(InvalidTypeException.class, () -> db.query(INDEXED).select("id", "nosuch").execute());
+    }
+
+    private void assertSameRows(int limit, String[]... conditions) throws Exception {
+        Query indexed = db.query(INDEXED).limit(limit);
+        Query scanned = db.query(SCANNED).limit(limit);
+        for (String[] condition : conditions) {
+            indexed.where(condition[0], condition[1], condition[2]);
+            scanned.where(condition[0], condition[1], condition[2]);
+        }
+        List<List<String>> expected = rows(scanned.execute());
+        List<List<String>> actual = rows(indexed.execute());
+        // the candidates come in index order, the scan in page order
+        actual.sort((a, b) -> a.get(0).compareTo(b.get(0)));
+        assertEquals(expected, actual);
+    }
+
+    private static List<List<String>> rows(List<String[]> rows) {
+        List<List<String>> lists = new ArrayList<>();
+        for (String[] row : rows) {
+            lists.add(Arrays.asList(row));
+        }
+        return lists;
+    }
+}
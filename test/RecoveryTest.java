@@ -0,0 +1,71 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecoveryTest extends DatabaseFixture {
+    private static final String TYPE_NAME = "recovered";
+    private static final int RECORDS = 200;
+
+    @Test
+    void changesOnlyInTheLogAreReplayedAfterACrash() throws Exception {
+        // a small buffer pool writes some of the pages, the rest of the changes are only in the log
+        Database db = new Database(DATABASE_NAME, 4);
+        db.createType(TYPE_NAME, new ArrayList<>(Arrays.asList("id", "name")), "id");
+        db.checkpoint();
+        for (int i = 0; i < RECORDS; i++) {
+            db.createRecord(TYPE_NAME, values("id", key(i), "name", "n" + i));
+        }
+        for (int i = 0; i < RECORDS; i += 10) {
+            db.deleteRecord(TYPE_NAME, key(i));
+        }
+        db.updateRecord(TYPE_NAME, key(1), Collections.singletonMap("name", "updated"));
+        db.updateRecord(TYPE_NAME, key(3), Collections.singletonMap("id", key(RECORDS)));
+        crash(db);
+
+        db = new Database(DATABASE_NAME, 4);
+        assertEquals(0, db.getMetrics().get("log.appends"));
+        assertEquals(0, db.getMetrics().get("log.bytes"));
+        assertEquals(RECORDS - RECORDS / 10, db.getRecordsByType(TYPE_NAME).size());
+        assertNull(db.getRecord(TYPE_NAME, key(10)));
+        assertEquals("updated", db.getRecord(TYPE_NAME, key(1)).getValue(1));
+        assertNull(db.getRecord(TYPE_NAME, key(3)));
+        assertEquals("n3", db.getRecord(TYPE_NAME, key(RECORDS)).getValue(1));
+        db.close();
+
+        db = new Database(DATABASE_NAME, 4);
+        assertEquals(RECORDS - RECORDS / 10, db.getRecordsByType(TYPE_NAME).size());
+        db.close();
+    }
+
+    @Test
+    void aPageTornByTheCrashIsRestoredFromTheLog() throws Exception {
+        Database db = new Database(DATABASE_NAME, 4);
+        db.createType(TYPE_NAME, new ArrayList<>(Arrays.asList("id", "name")), "id");
+        db.checkpoint();
+        for (int i = 0; i < RECORDS; i++) {
+            db.createRecord(TYPE_NAME, values("id", key(i), "name", "n" + i));
+        }
+        int pageLength = Page.getEncodedLength(db.getType(TYPE_NAME));
+        crash(db);
+
+        // the second half of page 2 still holds what was there before the write
+        try (RandomAccessFile file = new RandomAccessFile(TYPE_NAME + ".type.dat", "rw")) {
+            long offset = TypeFile.HEADER_SIZE + pageLength;
+            assertTrue(file.length() >= offset + pageLength);
+            file.seek(offset + pageLength / 2);
+            file.write(new byte[pageLength - pageLength / 2]);
+        }
+
+        db = new Database(DATABASE_NAME, 4);
+        assertEquals(RECORDS, db.getRecordsByType(TYPE_NAME).size());
+        for (int i = 0; i < RECORDS; i++) {
+            assertEquals("n" + i, db.getRecord(TYPE_NAME, key(i)).getValue(1));
+        }
+        db.close();
+    }
+}
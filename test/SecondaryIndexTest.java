@@ -0,0 +1,73 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SecondaryIndexTest extends DatabaseFixture {
+    private static final String TYPE_NAME = "indexed";
+    private static final String INDEX_FILENAME = TYPE_NAME + ".color.idx";
+    private static final int RECORDS = 500;
+
+    @Test
+    void aSaveAppendsOnlyTheChangesSinceTheLastOne() throws Exception {
+        Database db = createIndexedRecords();
+        long length = new File(INDEX_FILENAME).length();
+        db.checkpoint();
+        assertEquals(length, new File(INDEX_FILENAME).length());
+
+        // an update that keeps the color does not touch the index, the rest add five entries
+        db.updateRecord(TYPE_NAME, key(3), Collections.singletonMap("color", "c3"));
+        db.updateRecord(TYPE_NAME, key(0), Collections.singletonMap("id", key(RECORDS)));
+        db.updateRecord(TYPE_NAME, key(1), Collections.singletonMap("color", "c9"));
+        db.deleteRecord(TYPE_NAME, key(2));
+        db.checkpoint();
+        assertEquals(length + 5 * SecondaryIndex.ENTRY_LENGTH, new File(INDEX_FILENAME).length());
+        db.close();
+
+        db = openDatabase();
+        assertEquals(Collections.singletonList(key(1)), keys(db.findRecords(TYPE_NAME, "color", "c9")));
+        assertEquals(RECORDS / 5 - 1, db.findRecords(TYPE_NAME, "color", "c2").size());
+        assertTrue(keys(db.findRecords(TYPE_NAME, "color", "c0")).contains(key(RECORDS)));
+        db.close();
+    }
+
+    @Test
+    void anIndexChangedAfterItsLastSaveIsRebuilt() throws Exception {
+        Database db = createIndexedRecords();
+        for (int i = 0; i < RECORDS; i += 5) {
+            db.updateRecord(TYPE_NAME, key(i), Collections.singletonMap("color", "c9"));
+        }
+        crash(db);
+        assertNull(SecondaryIndex.load(INDEX_FILENAME, 1));
+
+        db = openDatabase();
+        assertEquals(RECORDS / 5, db.findRecords(TYPE_NAME, "color", "c9").size());
+        assertEquals(0, db.findRecords(TYPE_NAME, "color", "c0").size());
+        db.close();
+        assertNotNull(SecondaryIndex.load(INDEX_FILENAME, 1));
+    }
+
+    private Database createIndexedRecords() throws Exception {
+        Database db = openDatabase();
+        db.createType(TYPE_NAME, new ArrayList<>(Arrays.asList("id", "color")), "id");
+        for (int i = 0; i < RECORDS; i++) {
+            db.createRecord(TYPE_NAME, values("id", key(i), "color", "c" + i % 5));
+        }
+        db.createIndex(TYPE_NAME, "color");
+        db.checkpoint();
+        return db;
+    }
+
+    private static List<String> keys(List<Record> records) {
+        List<String> keys = new ArrayList<>();
+        for (Record record : records) {
+            keys.add(record.getKeyValue());
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,97 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamRecordsTest extends DatabaseFixture {
+    private static final String TYPE_NAME = "streamed";
+    private static final int RECORDS = 50 * Page.getCapacity();
+    private Database db;
+    private Set<String> expected;
+
+    @BeforeEach
+    void createRecords() throws Exception {
+        // far fewer pooled pages than the type has
+        db = new Database(DATABASE_NAME, 4);
+        db.createType(TYPE_NAME, new ArrayList<>(Arrays.asList("id", "name")), "id");
+        expected = new HashSet<>();
+        for (int i = 0; i < RECORDS; i++) {
+            db.createRecord(TYPE_NAME, values("id", key(i), "name", "n" + i));
+            expected.add(key(i));
+        }
+        // leaves holes in the pages, and a few pages empty
+        for (int i = 0; i < RECORDS; i++) {
+            if (i % 3 == 0 || i / Page.getCapacity() % 10 == 5) {
+                db.deleteRecord(TYPE_NAME, key(i));
+                expected.remove(key(i));
+            }
+        }
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        db.close();
+    }
+
+    @Test
+    void sequentialAndParallelStreamsReturnEveryRecordOnce() throws Exception {
+        long evictions = db.getMetrics().get("bufferPool.evictions");
+
+        List<String> sequential = db.streamRecords(TYPE_NAME).map(Record::getKeyValue).collect(Collectors.toList());
+        assertEquals(expected.size(), sequential.size());
+        assertEquals(expected, new HashSet<>(sequential));
+
+        List<String> parallel = db.streamRecords(TYPE_NAME).parallel().map(Record::getKeyValue).collect(Collectors.toList());
+        assertEquals(expected.size(), parallel.size());
+        assertEquals(expected, new HashSet<>(parallel));
+
+        // the scan reads the pages that are not pooled without taking the pool's frames
+        assertEquals(evictions, db.getMetrics().get("bufferPool.evictions"));
+    }
+
+    @Test
+    void splitsCoverThePageRangeWithoutOverlap() throws Exception {
+        Type type = db.getType(TYPE_NAME);
+        int pageCount = type.getPageCount();
+        Spliterator<Record> whole = new PageSpliterator(type, 1, pageCount + 1);
+        assertEquals((long) pageCount * Page.getCapacity(), whole.estimateSize());
+
+        // splits down to single pages, whose estimates add up to the whole range
+        List<Spliterator<Record>> pieces = new ArrayList<>();
+        Deque<Spliterator<Record>> pending = new ArrayDeque<>();
+        pending.push(whole);
+        long estimated = 0;
+        while (!pending.isEmpty()) {
+            Spliterator<Record> spliterator = pending.pop();
+            Spliterator<Record> split = spliterator.trySplit();
+            if (split != null) {
+                pending.push(split);
+                pending.push(spliterator);
+                continue;
+            }
+            assertEquals(Page.getCapacity(), spliterator.estimateSize());
+            estimated += spliterator.estimateSize();
+            pieces.add(spliterator);
+        }
+        assertEquals(pageCount, pieces.size());
+        assertEquals((long) pageCount * Page.getCapacity(), estimated);
+
+        List<String> keys = new ArrayList<>();
+        for (Spliterator<Record> piece : pieces) {
+            piece.forEachRemaining(record -> keys.add(record.getKeyValue()));
+        }
+        assertEquals(expected.size(), keys.size());
+        assertEquals(expected, new HashSet<>(keys));
+    }
+}
@@ -0,0 +1,92 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransactionTest extends DatabaseFixture {
+    private static final String TYPE_NAME = "account";
+    private static final int RECORDS = 100;
+    private Database db;
+
+    @BeforeEach
+    void createRecords() throws Exception {
+        db = openDatabase();
+        db.createType(TYPE_NAME, new ArrayList<>(Arrays.asList("id", "balance")), "id");
+        for (int i = 0; i < RECORDS; i++) {
+            db.createRecord(TYPE_NAME, values("id", key(i), "balance", "100"));
+        }
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        db.close();
+    }
+
+    @Test
+    void readsSeeTheSnapshotTakenAtBegin() throws Exception {
+        try (Transaction transaction = db.begin()) {
+            db.deleteRecord(TYPE_NAME, key(0));
+            db.createRecord(TYPE_NAME, values("id", key(RECORDS), "balance", "100"));
+            try (Transaction other = db.begin()) {
+                other.deleteRecord(TYPE_NAME, key(1));
+                other.createRecord(TYPE_NAME, values("id", key(1), "balance", "50"));
+                other.commit();
+            }
+            db.compact(TYPE_NAME);
+
+            assertNotNull(transaction.getRecord(TYPE_NAME, key(0)));
+            assertNull(transaction.getRecord(TYPE_NAME, key(RECORDS)));
+            assertEquals("100", transaction.getRecord(TYPE_NAME, key(1)).getValue(1));
+            assertEquals(RECORDS, transaction.getRecordsByType(TYPE_NAME).size());
+
+            transaction.deleteRecord(TYPE_NAME, key(2));
+            assertNull(transaction.getRecord(TYPE_NAME, key(2)));
+            assertEquals(RECORDS - 1, transaction.getRecordsByType(TYPE_NAME).size());
+            assertNotNull(db.getRecord(TYPE_NAME, key(2)));
+        }
+        assertEquals("50", db.getRecord(TYPE_NAME, key(1)).getValue(1));
+        assertNotNull(db.getRecord(TYPE_NAME, key(2)));
+    }
+
+    @Test
+    void theFirstCommitterWins() throws Exception {
+        Transaction first = db.begin();
+        Transaction second = db.begin();
+        first.deleteRecord(TYPE_NAME, key(0));
+        first.createRecord(TYPE_NAME, values("id", key(0), "balance", "0"));
+        second.deleteRecord(TYPE_NAME, key(0));
+        second.deleteRecord(TYPE_NAME, key(1));
+
+        first.commit();
+        assertThrows(TransactionConflictException.class, second::commit);
+        assertEquals("0", db.getRecord(TYPE_NAME, key(0)).getValue(1));
+        assertNotNull(db.getRecord(TYPE_NAME, key(1)));
+        assertEquals(0, db.getMetrics().get("transactions.open"));
+    }
+
+    @Test
+    void updatesAreIsolatedLikeOtherChanges() throws Exception {
+        try (Transaction transaction = db.begin()) {
+            db.updateRecord(TYPE_NAME, key(0), Collections.singletonMap("balance", "90"));
+            db.updateRecord(TYPE_NAME, key(1), Collections.singletonMap("id", key(RECORDS)));
+            assertEquals("100", transaction.getRecord(TYPE_NAME, key(0)).getValue(1));
+            assertNotNull(transaction.getRecord(TYPE_NAME, key(1)));
+            assertNull(transaction.getRecord(TYPE_NAME, key(RECORDS)));
+
+            transaction.updateRecord(TYPE_NAME, key(2), Collections.singletonMap("balance", "110"));
+            transaction.commit();
+        }
+        assertEquals("90", db.getRecord(TYPE_NAME, key(0)).getValue(1));
+        assertNull(db.getRecord(TYPE_NAME, key(1)));
+        assertEquals("100", db.getRecord(TYPE_NAME, key(RECORDS)).getValue(1));
+        assertEquals("110", db.getRecord(TYPE_NAME, key(2)).getValue(1));
+        assertEquals(RECORDS, db.getRecordsByType(TYPE_NAME).size());
+        assertThrows(InvalidRecordException.class,
+                () -> db.updateRecord(TYPE_NAME, key(3), Collections.singletonMap("id", key(4))));
+    }
+}